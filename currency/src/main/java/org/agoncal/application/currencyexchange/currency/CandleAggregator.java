@@ -0,0 +1,165 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * Open/high/low/close candles of each supported currency, at several resolutions.
+ * Every tick updates the current candle of each resolution in place (or opens a new one),
+ * so candles are never recomputed from the raw rates. Candles are kept in primitive ring buffers
+ * of scaled rates (see {@link RateHistory#SCALE}), the oldest ones being overwritten.
+ * A candle costs 40 bytes per resolution. The capacity is the configured one, unless the currency
+ * sets its own in the registry.
+ */
+@ApplicationScoped
+public class CandleAggregator {
+
+    private static final CandleResolution[] RESOLUTIONS = {
+        CandleResolution.ONE_SECOND, CandleResolution.ONE_MINUTE, CandleResolution.ONE_HOUR, CandleResolution.ONE_DAY
+    };
+
+    @ConfigProperty(name = "exchange-rates.candles.capacity", defaultValue = "1000")
+    int capacity;
+
+    @Inject
+    CurrencyRegistry currencyRegistry;
+
+    // Indexed by currency id, then by resolution (in RESOLUTIONS order)
+    private CandleSeries[][] series;
+
+    @PostConstruct
+    void init() {
+        series = new CandleSeries[currencyRegistry.size()][RESOLUTIONS.length];
+        for (int id = 0; id < series.length; id++) {
+            for (int resolution = 0; resolution < RESOLUTIONS.length; resolution++) {
+                series[id][resolution] = new CandleSeries(currencyRegistry.candleCapacity(id, capacity));
+            }
+        }
+    }
+
+    static long seconds(CandleResolution resolution) {
+        return switch (resolution) {
+            case ONE_SECOND -> 1;
+            case ONE_MINUTE -> 60;
+            case ONE_HOUR -> 3_600;
+            case ONE_DAY -> 86_400;
+            default -> throw new IllegalArgumentException("Unsupported resolution: " + resolution);
+        };
+    }
+
+    /**
+     * Adds a rate to the current candles of the currency. Must be called by a single thread, in increasing time order.
+     */
+    public void update(int currencyId, long epochSecond, long scaledRate) {
+        CandleSeries[] currencySeries = series[currencyId];
+        for (int resolution = 0; resolution < RESOLUTIONS.length; resolution++) {
+            long bucketSeconds = seconds(RESOLUTIONS[resolution]);
+            currencySeries[resolution].update(epochSecond - Math.floorMod(epochSecond, bucketSeconds), scaledRate);
+        }
+    }
+
+    /**
+     * @param limit maximum number of candles to return (the latest ones), 0 for all the kept candles
+     * @return the candles of the currency, oldest first
+     * @throws IllegalArgumentException if the currency or the resolution is not supported
+     */
+    public Candles candles(String currencyCode, CandleResolution resolution, int limit) {
+        int id = currencyRegistry.idOf(currencyCode);
+        if (id < 0) {
+            throw new IllegalArgumentException("Unsupported currency: " + currencyCode);
+        }
+        if (resolution == CandleResolution.UNRECOGNIZED) {
+            throw new IllegalArgumentException("Unsupported resolution: " + resolution);
+        }
+        // RESOLUTIONS follows the order of the enum
+        CandleSeries resolutionSeries = series[id][resolution.ordinal()];
+        int kept = resolutionSeries.capacity();
+        return resolutionSeries.latest(limit <= 0 ? kept : Math.min(limit, kept));
+    }
+
+    /**
+     * Copy of the latest candles, in columns of scaled rates.
+     */
+    public record Candles(long[] startEpochSeconds, long[] open, long[] high, long[] low, long[] close, int size) {
+    }
+
+    private static final class CandleSeries {
+
+        private final long[] startEpochSeconds;
+        private final long[] open;
+        private final long[] high;
+        private final long[] low;
+        private final long[] close;
+        // Number of candles ever opened
+        private long count;
+        // Odd while the writer updates a candle, so readers can detect torn reads and retry
+        private volatile long version;
+
+        CandleSeries(int capacity) {
+            startEpochSeconds = new long[capacity];
+            open = new long[capacity];
+            high = new long[capacity];
+            low = new long[capacity];
+            close = new long[capacity];
+        }
+
+        int capacity() {
+            return startEpochSeconds.length;
+        }
+
+        void update(long bucketStart, long scaledRate) {
+            version++;
+            VarHandle.storeStoreFence();
+            int current = (int) ((count - 1) % startEpochSeconds.length);
+            if (count > 0 && startEpochSeconds[current] == bucketStart) {
+                high[current] = Math.max(high[current], scaledRate);
+                low[current] = Math.min(low[current], scaledRate);
+                close[current] = scaledRate;
+            } else {
+                int slot = (int) (count % startEpochSeconds.length);
+                startEpochSeconds[slot] = bucketStart;
+                open[slot] = scaledRate;
+                high[slot] = scaledRate;
+                low[slot] = scaledRate;
+                close[slot] = scaledRate;
+                count++;
+            }
+            version++;
+        }
+
+        Candles latest(int limit) {
+            while (true) {
+                long before = version;
+                if ((before & 1) == 1) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+
+                int size = (int) Math.min(limit, count);
+                long first = count - size;
+                long[] starts = new long[size];
+                long[] opens = new long[size];
+                long[] highs = new long[size];
+                long[] lows = new long[size];
+                long[] closes = new long[size];
+                for (int i = 0; i < size; i++) {
+                    int slot = (int) ((first + i) % startEpochSeconds.length);
+                    starts[i] = startEpochSeconds[slot];
+                    opens[i] = open[slot];
+                    highs[i] = high[slot];
+                    lows[i] = low[slot];
+                    closes[i] = close[slot];
+                }
+
+                VarHandle.loadLoadFence();
+                if (version == before) {
+                    return new Candles(starts, opens, highs, lows, closes, size);
+                }
+            }
+        }
+    }
+}
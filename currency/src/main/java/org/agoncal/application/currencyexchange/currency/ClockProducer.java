@@ -0,0 +1,47 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Produces;
+import jakarta.inject.Singleton;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Produces the clock the rates are generated with: the system clock, or a {@link SimulatedClock}.
+ */
+@ApplicationScoped
+public class ClockProducer {
+
+    private static final Logger LOG = Logger.getLogger(ClockProducer.class);
+
+    // system or simulated
+    @ConfigProperty(name = "exchange-rates.clock", defaultValue = "system")
+    String clock;
+
+    // When the simulated clock starts, now if not set
+    @ConfigProperty(name = "exchange-rates.clock.start")
+    Optional<Instant> start;
+
+    // Speed of the simulated clock: 1 for real time, N for N times faster, 0 to only advance it programmatically
+    @ConfigProperty(name = "exchange-rates.clock.speed", defaultValue = "1")
+    double speed;
+
+    // Singleton, so there is no client proxy and the clock can be cast to SimulatedClock
+    @Produces
+    @Singleton
+    Clock clock() {
+        return switch (clock) {
+            case "system" -> Clock.systemDefaultZone();
+            case "simulated" -> {
+                Instant startInstant = start.orElse(Instant.now());
+                LOG.info("Simulated clock starting at " + startInstant + " at speed " + speed);
+                yield new SimulatedClock(startInstant, speed);
+            }
+            default -> throw new IllegalArgumentException("Unsupported clock: " + clock + ", expecting system or simulated");
+        };
+    }
+}
@@ -0,0 +1,129 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable N×N matrix of the cross rates between all the supported currencies, USD included.
+ * The rates are stored row-major in a primitive array, so any pair lookup is O(1):
+ * {@code rate(from, to)} is the amount of {@code to} currency for 1 {@code from} currency.
+ */
+public final class CrossRateMatrix {
+
+    public static final String BASE_CURRENCY = "USD";
+
+    private final String[] currencyCodes;
+    private final Map<String, Integer> indexes;
+    private final double[] usdRates;
+    private final double[] rates;
+    private final long epochMillis;
+    private final String timestamp;
+    private volatile CrossRateMatrixResponse response;
+
+    private CrossRateMatrix(String[] currencyCodes, Map<String, Integer> indexes, double[] usdRates, double[] rates, Instant timestamp, boolean stringTimestamp) {
+        this.currencyCodes = currencyCodes;
+        this.indexes = indexes;
+        this.usdRates = usdRates;
+        this.rates = rates;
+        this.epochMillis = timestamp.toEpochMilli();
+        this.timestamp = stringTimestamp ? ExchangeRateEngine.formatTimestamp(timestamp) : "";
+    }
+
+    /**
+     * Builds the matrix of the given USD rates. When the currencies are the same as the previous matrix,
+     * only the rows and columns of the currencies whose USD rate changed are recomputed.
+     *
+     * @param currencyCodes the currencies of the matrix, the first one being USD
+     * @param usdRates      the USD rate of each currency (1 USD = usdRates[i] currencyCodes[i])
+     * @param timestamp       when the USD rates were calculated
+     * @param stringTimestamp also formats the deprecated ISO string timestamp, for the clients that do not read epoch_millis
+     */
+    public static CrossRateMatrix build(CrossRateMatrix previous, String[] currencyCodes, double[] usdRates, Instant timestamp, boolean stringTimestamp) {
+        int size = currencyCodes.length;
+
+        if (previous == null || !Arrays.equals(previous.currencyCodes, currencyCodes)) {
+            Map<String, Integer> indexes = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                indexes.put(currencyCodes[i], i);
+            }
+            double[] rates = new double[size * size];
+            for (int from = 0; from < size; from++) {
+                computeRow(rates, usdRates, size, from);
+            }
+            return new CrossRateMatrix(currencyCodes.clone(), Map.copyOf(indexes), usdRates.clone(), rates, timestamp, stringTimestamp);
+        }
+
+        double[] rates = previous.rates.clone();
+        for (int changed = 0; changed < size; changed++) {
+            if (usdRates[changed] != previous.usdRates[changed]) {
+                computeRow(rates, usdRates, size, changed);
+                computeColumn(rates, usdRates, size, changed);
+            }
+        }
+        return new CrossRateMatrix(previous.currencyCodes, previous.indexes, usdRates.clone(), rates, timestamp, stringTimestamp);
+    }
+
+    private static void computeRow(double[] rates, double[] usdRates, int size, int from) {
+        int row = from * size;
+        for (int to = 0; to < size; to++) {
+            rates[row + to] = usdRates[to] / usdRates[from];
+        }
+    }
+
+    private static void computeColumn(double[] rates, double[] usdRates, int size, int to) {
+        for (int from = 0; from < size; from++) {
+            rates[from * size + to] = usdRates[to] / usdRates[from];
+        }
+    }
+
+    public long epochMillis() {
+        return epochMillis;
+    }
+
+    /**
+     * @return the ISO string timestamp, empty when it is not formatted
+     */
+    public String timestamp() {
+        return timestamp;
+    }
+
+    public int size() {
+        return currencyCodes.length;
+    }
+
+    /**
+     * @return the index of the currency in the matrix, or -1 if it is not supported
+     */
+    public int indexOf(String currencyCode) {
+        Integer index = indexes.get(currencyCode);
+        return index == null ? -1 : index;
+    }
+
+    public double rate(int from, int to) {
+        return rates[from * currencyCodes.length + to];
+    }
+
+    /**
+     * @return the whole matrix as a gRPC message, built once per matrix
+     */
+    @SuppressWarnings("deprecation") // Still sent while exchange-rates.string-timestamp.enabled is true
+    public CrossRateMatrixResponse toGrpcResponse() {
+        CrossRateMatrixResponse grpcResponse = response;
+        if (grpcResponse == null) {
+            CrossRateMatrixResponse.Builder builder = CrossRateMatrixResponse.newBuilder()
+                .setEpochMillis(epochMillis)
+                .setTimestamp(timestamp);
+            for (String currencyCode : currencyCodes) {
+                builder.addCurrencyCodes(currencyCode);
+            }
+            for (double rate : rates) {
+                builder.addRates(rate);
+            }
+            grpcResponse = builder.build();
+            response = grpcResponse;
+        }
+        return grpcResponse;
+    }
+}
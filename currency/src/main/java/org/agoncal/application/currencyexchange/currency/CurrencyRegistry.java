@@ -0,0 +1,174 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Supported currencies, loaded at startup from a CSV file (see {@code currencies.csv}).
+ * Each currency gets a dense id (0 to size - 1, in alphabetical order of the codes)
+ * used to index the arrays of the hot paths, instead of hashing currency codes.
+ * A currency can also set how much rate history and how many candles are kept for it.
+ */
+@ApplicationScoped
+public class CurrencyRegistry {
+
+    private static final Logger LOG = Logger.getLogger(CurrencyRegistry.class);
+
+    private static final String DEFAULT_CURRENCIES_FILE = "currencies.csv";
+
+    @ConfigProperty(name = "exchange-rates.currencies-file")
+    Optional<String> currenciesFile;
+
+    private String[] codes;
+    private FixedPoint[] baseRates;
+    private int[] scales;
+    private long[] seeds;
+    // 0 when the currency uses the configured capacity
+    private int[] historyCapacities;
+    private int[] candleCapacities;
+    private Map<String, Integer> ids;
+
+    @PostConstruct
+    void init() {
+        try (Reader reader = open()) {
+            load(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to load the currencies", e);
+        }
+        LOG.info("Loaded " + codes.length + " currencies");
+    }
+
+    /**
+     * Opens the configured file, or the classpath resource of that name when there is no such file
+     * (e.g. {@code currencies-iso4217.csv}).
+     */
+    private Reader open() throws IOException {
+        String file = currenciesFile.orElse(DEFAULT_CURRENCIES_FILE);
+        if (currenciesFile.isPresent() && Files.isRegularFile(Path.of(file))) {
+            return Files.newBufferedReader(Path.of(file), StandardCharsets.UTF_8);
+        }
+        InputStream stream = Thread.currentThread().getContextClassLoader().getResourceAsStream(file);
+        if (stream == null) {
+            throw new IOException("Missing " + file + ", neither a file nor in the classpath");
+        }
+        return new InputStreamReader(stream, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads lines of {@code code,base_rate,scale,seed[,history_capacity[,candle_capacity]]}, an empty capacity being the configured one.
+     * Blank lines, comments (#) and the header are skipped.
+     */
+    void load(Reader reader) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#") || line.startsWith("code,")) {
+                continue;
+            }
+            String[] columns = line.split(",", -1);
+            if (columns.length < 4 || columns.length > 6) {
+                throw new IllegalArgumentException("Invalid currency line, expecting code,base_rate,scale,seed[,history_capacity[,candle_capacity]]: " + line);
+            }
+            rows.add(columns);
+        }
+        rows.sort((a, b) -> a[0].strip().compareTo(b[0].strip()));
+
+        int size = rows.size();
+        codes = new String[size];
+        baseRates = new FixedPoint[size];
+        scales = new int[size];
+        seeds = new long[size];
+        historyCapacities = new int[size];
+        candleCapacities = new int[size];
+        ids = new HashMap<>();
+        for (int id = 0; id < size; id++) {
+            String[] columns = rows.get(id);
+            codes[id] = columns[0].strip();
+            baseRates[id] = FixedPoint.of(new BigDecimal(columns[1].strip()));
+            scales[id] = Integer.parseInt(columns[2].strip());
+            seeds[id] = Long.parseLong(columns[3].strip());
+            historyCapacities[id] = capacity(columns, 4);
+            candleCapacities[id] = capacity(columns, 5);
+            if (scales[id] < 0 || scales[id] > RateHistory.SCALE) {
+                throw new IllegalArgumentException("Invalid scale for " + codes[id] + ", expecting 0 to " + RateHistory.SCALE);
+            }
+            if (ids.put(codes[id], id) != null) {
+                throw new IllegalArgumentException("Duplicated currency: " + codes[id]);
+            }
+        }
+        ids = Map.copyOf(ids);
+    }
+
+    private static int capacity(String[] columns, int column) {
+        if (column >= columns.length || columns[column].isBlank()) {
+            return 0;
+        }
+        int capacity = Integer.parseInt(columns[column].strip());
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity for " + columns[0].strip() + ", expecting a positive number: " + capacity);
+        }
+        return capacity;
+    }
+
+    public int size() {
+        return codes.length;
+    }
+
+    /**
+     * @return the id of the currency, or -1 if it is not supported
+     */
+    public int idOf(String currencyCode) {
+        Integer id = ids.get(currencyCode);
+        return id == null ? -1 : id;
+    }
+
+    public String code(int id) {
+        return codes[id];
+    }
+
+    public FixedPoint baseRate(int id) {
+        return baseRates[id];
+    }
+
+    public int scale(int id) {
+        return scales[id];
+    }
+
+    public long seed(int id) {
+        return seeds[id];
+    }
+
+    /**
+     * @return the number of samples to keep in the rate history of the currency, or the given default
+     */
+    public int historyCapacity(int id, int defaultCapacity) {
+        return historyCapacities[id] > 0 ? historyCapacities[id] : defaultCapacity;
+    }
+
+    /**
+     * @return the number of candles to keep per resolution for the currency, or the given default
+     */
+    public int candleCapacity(int id, int defaultCapacity) {
+        return candleCapacities[id] > 0 ? candleCapacities[id] : defaultCapacity;
+    }
+}
@@ -0,0 +1,246 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import io.quarkus.scheduler.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Instance;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Computes the rates of all the supported currencies once per tick and publishes them
+ * as an immutable {@link RateSnapshot}. Rates only change once per second, so serving a
+ * request is a read of the current snapshot instead of N calculations. Rates come from
+ * a {@link RateSource} and are computed on scaled longs (see {@link FixedPoint}).
+ * Ticks follow the injected clock, which can be a {@link SimulatedClock}.
+ * <p>
+ * Only the scheduler computes and records the ticks, the request threads (often Vert.x event loops)
+ * never do more than reading the published snapshot.
+ */
+@ApplicationScoped
+public class ExchangeRateEngine {
+
+    @ConfigProperty(name = "exchange-rates.string-timestamp.enabled", defaultValue = "true")
+    boolean stringTimestampEnabled;
+
+    @Inject
+    RateHistory rateHistory;
+
+    @Inject
+    CandleAggregator candleAggregator;
+
+    @Inject
+    CurrencyRegistry currencyRegistry;
+
+    @Inject
+    Instance<RateSource> rateSources;
+
+    @Inject
+    Clock clock;
+
+    @Inject
+    ThresholdSubscriptions thresholdSubscriptions;
+
+    /**
+     * Source selected by exchange-rates.source
+     */
+    private RateSource rateSource;
+
+    /**
+     * Currencies of the cross-rate matrix: USD first, then the supported currencies in id order.
+     */
+    private String[] crossRateCurrencies;
+
+    private volatile RateSnapshot snapshot = RateSnapshot.EMPTY;
+
+    // Coalescing metrics: every request of a tick shares the computation of its snapshot
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder snapshots = new LongAdder();
+
+    @PostConstruct
+    void init() {
+        init(rateSources.get());
+    }
+
+    void init(RateSource source) {
+        rateSource = source;
+        crossRateCurrencies = new String[currencyRegistry.size() + 1];
+        crossRateCurrencies[0] = CrossRateMatrix.BASE_CURRENCY;
+        for (int id = 0; id < currencyRegistry.size(); id++) {
+            crossRateCurrencies[id + 1] = currencyRegistry.code(id);
+        }
+        // Requests may come before the first scheduled tick
+        tick();
+    }
+
+    /**
+     * Returns the last published snapshot, at most one tick interval behind the clock.
+     */
+    public RateSnapshot current() {
+        return snapshot;
+    }
+
+    /**
+     * Same as {@link #current()}, for a request answered from the snapshot: the request is counted in the coalescing metrics.
+     */
+    public RateSnapshot serve() {
+        RateSnapshot served = snapshot;
+        requests.increment();
+        served.requests().increment();
+        return served;
+    }
+
+    /**
+     * @return the number of requests answered from a snapshot
+     */
+    public long requests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return the number of snapshots computed and published, one per tick
+     */
+    public long snapshots() {
+        return snapshots.sum();
+    }
+
+    /**
+     * @return the average number of requests that shared the computation of a snapshot
+     */
+    public double requestsPerSnapshot() {
+        long computed = snapshots();
+        return computed == 0 ? 0 : (double) requests() / computed;
+    }
+
+    /**
+     * Computes every tick even when there are no requests, so the history and the candles have no gap.
+     */
+    @Scheduled(every = "{exchange-rates.tick.interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    synchronized void tick() {
+        long tick = clock.millis() / 1_000; // Convert to seconds
+        RateSnapshot previous = snapshot;
+        if (previous.tick() >= tick) {
+            return;
+        }
+
+        // Before the new tick, so a stateful source moves through the skipped ticks in order
+        if (previous != RateSnapshot.EMPTY && rateSource.generatesSkippedTicks()) {
+            recordSkippedTicks(previous.tick() + 1, tick);
+        }
+        RateSnapshot next = computeSnapshot(tick, previous);
+        snapshot = next;
+        snapshots.increment();
+        record(next);
+        // On every tick rather than at the stream interval, so a crossing is pushed as soon as it is published
+        thresholdSubscriptions.evaluate(next);
+    }
+
+    /**
+     * Records the published rates in the history and the candles, which both expect a single writer.
+     */
+    private void record(RateSnapshot published) {
+        for (int id = 0; id < published.rates().size(); id++) {
+            long scaledRate = published.rates().get(id).rate().scaledTo(RateHistory.SCALE);
+            rateHistory.record(id, published.tick(), scaledRate);
+            candleAggregator.update(id, published.tick(), scaledRate);
+        }
+    }
+
+    /**
+     * Ticks can be skipped when the scheduler is late, or when a simulated clock runs faster than the scheduler.
+     * Their rates are generated and recorded (up to the history capacity), without publishing a snapshot.
+     */
+    private void recordSkippedTicks(long fromTick, long toTick) {
+        long[] scaledRates = new long[currencyRegistry.size()];
+        for (long tick = Math.max(fromTick, toTick - rateHistory.maxCapacity()); tick < toTick; tick++) {
+            rateSource.rates(tick, scaledRates);
+            for (int id = 0; id < scaledRates.length; id++) {
+                long scaledRate = currencyRate(id, scaledRates[id]).scaledTo(RateHistory.SCALE);
+                rateHistory.record(id, tick, scaledRate);
+                candleAggregator.update(id, tick, scaledRate);
+            }
+        }
+    }
+
+    private RateSnapshot computeSnapshot(long tick, RateSnapshot previous) {
+        Instant timestamp = clock.instant();
+        int size = currencyRegistry.size();
+
+        ExchangeRateData[] rates = new ExchangeRateData[size];
+        ExchangeRate[] grpcRates = new ExchangeRate[size];
+        long[] scaledRates = new long[size];
+        double[] usdRates = new double[size + 1];
+        usdRates[0] = 1;
+        rateSource.rates(tick, scaledRates);
+
+        // The gRPC response is built and serialized once per tick, not once per call
+        ExchangeRateListResponse.Builder responseBuilder = ExchangeRateListResponse.newBuilder();
+        for (int id = 0; id < size; id++) {
+            rates[id] = rateData(id, scaledRates[id], timestamp);
+            grpcRates[id] = convertToGrpcExchangeRate(rates[id], stringTimestampEnabled);
+            responseBuilder.addRates(grpcRates[id]);
+            usdRates[id + 1] = rates[id].rate().toDouble();
+        }
+
+        // A rate that did not change keeps its version, so clients can ask for the changed rates only
+        long[] changedVersions = new long[size];
+        long version = previous.version();
+        for (int id = 0; id < size; id++) {
+            boolean changed = previous.rates().isEmpty() || !previous.rates().get(id).rate().equals(rates[id].rate());
+            changedVersions[id] = changed ? tick : previous.changedVersions()[id];
+            if (changed) {
+                version = tick;
+            }
+        }
+        ExchangeRateListResponse response = responseBuilder.setVersion(version).build();
+
+        CrossRateMatrix crossRates = CrossRateMatrix.build(previous.crossRates(), crossRateCurrencies, usdRates, timestamp,
+            stringTimestampEnabled);
+
+        return new RateSnapshot(tick, version, changedVersions, timestamp, currencyRegistry, List.of(rates), List.of(grpcRates),
+            response, response.toByteArray(), crossRates, new LongAdder());
+    }
+
+    private ExchangeRateData rateData(int id, long scaledRate, Instant timestamp) {
+        return new ExchangeRateData(currencyRegistry.code(id), currencyRate(id, scaledRate), timestamp);
+    }
+
+    /**
+     * @return the rate rounded to the decimal places of the currency
+     */
+    private FixedPoint currencyRate(int id, long scaledRate) {
+        return FixedPoint.of(scaledRate, RateHistory.SCALE).withScale(currencyRegistry.scale(id));
+    }
+
+    /**
+     * @param stringTimestamp also sends the deprecated ISO string timestamp, for the clients that do not read epoch_millis
+     */
+    @SuppressWarnings("deprecation") // Still sent while exchange-rates.string-timestamp.enabled is true
+    static ExchangeRate convertToGrpcExchangeRate(ExchangeRateData rate, boolean stringTimestamp) {
+        ExchangeRate.Builder builder = ExchangeRate.newBuilder()
+            .setCurrencyCode(rate.currencyCode())
+            .setRate(rate.rate().toDouble())
+            .setRateMantissa(rate.rate().mantissa())
+            .setRateScale(rate.rate().scale())
+            .setEpochMillis(rate.timestamp().toEpochMilli());
+        if (stringTimestamp) {
+            builder.setTimestamp(formatTimestamp(rate.timestamp()));
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return the timestamp in the ISO local date time format of the server zone, as it was sent before epoch_millis
+     */
+    static String formatTimestamp(Instant timestamp) {
+        return LocalDateTime.ofInstant(timestamp, ZoneId.systemDefault()).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+    }
+}
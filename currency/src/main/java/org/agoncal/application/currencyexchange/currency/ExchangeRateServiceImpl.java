@@ -1,59 +1,102 @@
 package org.agoncal.application.currencyexchange.currency;
 
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServiceDescriptor;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.ServerCalls;
 import io.grpc.stub.StreamObserver;
 import io.quarkus.grpc.GrpcService;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
+import jakarta.inject.Inject;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.Instant;
 import java.util.List;
 import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Runs on the Vert.x event loop, which also serves the HTTP endpoints: no method blocks it.
+ * The unary methods answer from the current snapshot, and the ones with real work to do
+ * (copying a history, building candles) run it on a worker thread.
+ */
 @GrpcService
-public class ExchangeRateServiceImpl extends ExchangeRateServiceGrpc.ExchangeRateServiceImplBase {
+public class ExchangeRateServiceImpl extends MutinyExchangeRateServiceGrpc.ExchangeRateServiceImplBase {
 
     private static final Logger LOG = Logger.getLogger(ExchangeRateServiceImpl.class);
 
-    @ConfigProperty(name = "exchange-rates.fluctuation-factor", defaultValue = "0.02")
-    double fluctuationFactor;
+    @Inject
+    ExchangeRateEngine exchangeRateEngine;
+
+    @Inject
+    RateHistory rateHistory;
+
+    @Inject
+    CandleAggregator candleAggregator;
+
+    @Inject
+    RateFanOut rateFanOut;
+
+    @Inject
+    ThresholdSubscriptions thresholdSubscriptions;
+
+    @ConfigProperty(name = "exchange-rates.string-timestamp.enabled", defaultValue = "true")
+    boolean stringTimestampEnabled;
 
     /**
-     * Currency-specific seeds used in the rate fluctuation algorithm.
-     * Each currency gets a unique seed value that is added to the current timestamp
-     * in the sin() function to create different fluctuation patterns for each currency.
-     * This ensures that different currencies don't fluctuate in sync and creates
-     * more realistic, independent exchange rate movements.
+     * GetAllCurrentRates bound with a marshaller that writes the response already encoded
+     * in the current snapshot, instead of the generated one that serializes an ExchangeRateListResponse.
      */
-    private static final Map<String, Long> CURRENCY_SEEDS = Map.of(
-        "AUD", 1000L,
-        "CAD", 2000L,
-        "CHF", 3000L,
-        "EUR", 4000L,
-        "GBP", 5000L,
-        "JPY", 6000L
-    );
+    private static final MethodDescriptor<AllRatesRequest, byte[]> PRE_ENCODED_GET_ALL_CURRENT_RATES_METHOD =
+        ExchangeRateServiceGrpc.getGetAllCurrentRatesMethod()
+            .toBuilder(ProtoUtils.marshaller(AllRatesRequest.getDefaultInstance()), PreEncodedMarshaller.INSTANCE)
+            .build();
 
+    /**
+     * Binds the generated Mutiny methods, except the ones that need the gRPC call itself:
+     * <ul>
+     *     <li>GetAllCurrentRates, bound to {@link #getAllCurrentRatesPreEncoded} with a marshaller that writes the bytes of the snapshot</li>
+     *     <li>the server streaming methods. The Mutiny adapter requests the whole stream at once, without following the transport
+     *     readiness, so a slow client would make the server buffer without bound. They are bound to StreamObserver methods
+     *     that only send while the call is ready</li>
+     * </ul>
+     */
     @Override
-    public void getAllCurrentRates(Empty request, StreamObserver<ExchangeRateListResponse> responseObserver) {
-        LOG.info("Getting all current exchange rates");
-
-        try {
-            List<ExchangeRateData> rates = getAllCurrentRatesInternal();
-
-            ExchangeRateListResponse.Builder responseBuilder = ExchangeRateListResponse.newBuilder();
+    public ServerServiceDefinition bindService() {
+        Map<String, ServerMethodDefinition<?, ?>> boundByHand = Stream.of(
+                ServerMethodDefinition.create(PRE_ENCODED_GET_ALL_CURRENT_RATES_METHOD, ServerCalls.asyncUnaryCall(this::getAllCurrentRatesPreEncoded)),
+                ServerMethodDefinition.create(ExchangeRateServiceGrpc.getGetRateHistoryMethod(), ServerCalls.asyncServerStreamingCall(this::getRateHistory)),
+                ServerMethodDefinition.create(ExchangeRateServiceGrpc.getStreamRatesMethod(), ServerCalls.asyncServerStreamingCall(this::streamRates)),
+                ServerMethodDefinition.create(ExchangeRateServiceGrpc.getSubscribeThresholdsMethod(), ServerCalls.asyncServerStreamingCall(this::subscribeThresholds)))
+            .collect(Collectors.toMap(method -> method.getMethodDescriptor().getFullMethodName(), method -> method));
 
-            for (ExchangeRateData rate : rates) {
-                ExchangeRate grpcRate = convertToGrpcExchangeRate(rate);
-                responseBuilder.addRates(grpcRate);
-            }
+        // The generated service, with the methods bound by hand in place of the generated ones
+        ServerServiceDefinition generated = super.bindService();
+        List<ServerMethodDefinition<?, ?>> methods = generated.getMethods().stream()
+            .<ServerMethodDefinition<?, ?>>map(method -> boundByHand.getOrDefault(method.getMethodDescriptor().getFullMethodName(), method))
+            .toList();
+        ServiceDescriptor.Builder descriptor = ServiceDescriptor.newBuilder(generated.getServiceDescriptor().getName())
+            .setSchemaDescriptor(generated.getServiceDescriptor().getSchemaDescriptor());
+        methods.forEach(method -> descriptor.addMethod(method.getMethodDescriptor()));
+        ServerServiceDefinition.Builder definition = ServerServiceDefinition.builder(descriptor.build());
+        methods.forEach(definition::addMethod);
+        return definition.build();
+    }
 
-            ExchangeRateListResponse response = responseBuilder.build();
-            LOG.info("Returning " + rates.size() + " exchange rates");
+    private void getAllCurrentRatesPreEncoded(AllRatesRequest request, StreamObserver<byte[]> responseObserver) {
+        LOG.debugf("Getting all current exchange rates changed after version %d", request.getIfVersionAfter());
 
-            responseObserver.onNext(response);
+        try {
+            // Without a version, all the rates already encoded in the snapshot
+            responseObserver.onNext(exchangeRateEngine.serve().encodedRatesChangedSince(request.getIfVersionAfter()));
             responseObserver.onCompleted();
 
         } catch (Exception e) {
@@ -63,69 +106,203 @@ public class ExchangeRateServiceImpl extends ExchangeRateServiceGrpc.ExchangeRat
     }
 
     @Override
-    public void getCurrentRate(CurrencyRequest request, StreamObserver<ExchangeRateResponse> responseObserver) {
-        LOG.info("Getting current rate for currency: " + request.getCurrencyCode());
+    public Uni<ExchangeRateResponse> getCurrentRate(CurrencyRequest request) {
+        LOG.debugf("Getting current rate for currency: %s", request.getCurrencyCode());
 
-        try {
-            ExchangeRateData rate = getCurrentRateInternal(request.getCurrencyCode());
+        return Uni.createFrom().item(() -> {
+                ExchangeRate grpcRate = exchangeRateEngine.serve().grpcRate(request.getCurrencyCode());
+                if (grpcRate == null) {
+                    throw new IllegalArgumentException("Unsupported currency: " + request.getCurrencyCode());
+                }
+                return ExchangeRateResponse.newBuilder()
+                    .setRate(grpcRate)
+                    .build();
+            })
+            .onFailure().invoke(e -> LOG.error("Error getting current rate for " + request.getCurrencyCode(), e));
+    }
 
-            ExchangeRate grpcRate = convertToGrpcExchangeRate(rate);
+    @Override
+    public Uni<RateResultListResponse> getRates(CurrencyListRequest request) {
+        LOG.debugf("Getting current rates for currencies: %s", request.getCurrencyCodesList());
 
-            ExchangeRateResponse response = ExchangeRateResponse.newBuilder()
-                .setRate(grpcRate)
-                .build();
+        return Uni.createFrom().item(() -> {
+                // All the rates come from the same snapshot, so they are consistent with each other
+                RateSnapshot snapshot = exchangeRateEngine.serve();
 
-            LOG.info("Returning exchange rate for " + request.getCurrencyCode() + ": " + rate.rate());
+                RateResultListResponse.Builder responseBuilder = RateResultListResponse.newBuilder();
+                for (String currencyCode : request.getCurrencyCodesList()) {
+                    RateResult.Builder result = RateResult.newBuilder().setCurrencyCode(currencyCode);
+                    ExchangeRate grpcRate = snapshot.grpcRate(currencyCode);
+                    if (grpcRate != null) {
+                        result.setRate(grpcRate);
+                    } else {
+                        result.setError("Unsupported currency: " + currencyCode);
+                    }
+                    responseBuilder.addResults(result);
+                }
+                return responseBuilder.build();
+            })
+            .onFailure().invoke(e -> LOG.error("Error getting current rates for " + request.getCurrencyCodesList(), e));
+    }
 
-            responseObserver.onNext(response);
-            responseObserver.onCompleted();
+    @Override
+    @SuppressWarnings("deprecation") // Still sent while exchange-rates.string-timestamp.enabled is true
+    public Uni<CrossRateResponse> getCrossRate(CrossRateRequest request) {
+        LOG.debugf("Getting cross rate from %s to %s", request.getFromCurrencyCode(), request.getToCurrencyCode());
 
-        } catch (Exception e) {
-            LOG.error("Error getting current rate for " + request.getCurrencyCode(), e);
-            responseObserver.onError(e);
-        }
+        return Uni.createFrom().item(() -> {
+                CrossRateMatrix crossRates = exchangeRateEngine.serve().crossRates();
+                int from = crossRates.indexOf(request.getFromCurrencyCode());
+                if (from < 0) {
+                    throw new IllegalArgumentException("Unsupported currency: " + request.getFromCurrencyCode());
+                }
+                int to = crossRates.indexOf(request.getToCurrencyCode());
+                if (to < 0) {
+                    throw new IllegalArgumentException("Unsupported currency: " + request.getToCurrencyCode());
+                }
+
+                return CrossRateResponse.newBuilder()
+                    .setFromCurrencyCode(request.getFromCurrencyCode())
+                    .setToCurrencyCode(request.getToCurrencyCode())
+                    .setRate(crossRates.rate(from, to))
+                    .setEpochMillis(crossRates.epochMillis())
+                    .setTimestamp(crossRates.timestamp())
+                    .build();
+            })
+            .onFailure().invoke(e -> LOG.error("Error getting cross rate from " + request.getFromCurrencyCode() + " to " + request.getToCurrencyCode(), e));
     }
 
-    private List<ExchangeRateData> getAllCurrentRatesInternal() {
-        return ExchangeRateData.SUPPORTED_CURRENCIES.stream()
-            .map(currencyCode -> calculateRate(currencyCode, LocalDateTime.now()))
-            .toList();
+    @Override
+    public Uni<CrossRateMatrixResponse> getCrossRateMatrix(Empty request) {
+        LOG.debug("Getting the cross rate matrix");
+
+        return Uni.createFrom().item(() -> exchangeRateEngine.serve().crossRates().toGrpcResponse())
+            .onFailure().invoke(e -> LOG.error("Error getting the cross rate matrix", e));
     }
 
-    private ExchangeRateData getCurrentRateInternal(String currencyCode) {
-        if (!ExchangeRateData.SUPPORTED_CURRENCIES.contains(currencyCode)) {
-            return null;
-        }
-        return calculateRate(currencyCode, LocalDateTime.now());
+    @SuppressWarnings("deprecation") // Still sent while exchange-rates.string-timestamp.enabled is true
+    private void getRateHistory(RateHistoryRequest request, StreamObserver<ExchangeRate> responseObserver) {
+        LOG.debugf("Getting rate history for currency: %s", request.getCurrencyCode());
+
+        String currencyCode = request.getCurrencyCode();
+        long toEpochSecond = request.getToEpochSecond() == 0 ? Long.MAX_VALUE - 1 : request.getToEpochSecond();
+        // The ready handler can only be set now, the samples are copied on a worker thread
+        FlowControlledSender<ExchangeRate> sender = new FlowControlledSender<>(responseObserver);
+        Uni.createFrom().item(() -> rateHistory.query(currencyCode, request.getFromEpochSecond(), toEpochSecond))
+            .runSubscriptionOn(Infrastructure.getDefaultWorkerPool())
+            .subscribe().with(
+                samples -> {
+                    LOG.debugf("Returning %d historical rates for %s", samples.size(), currencyCode);
+                    sender.send(samples.size(), i -> ExchangeRate.newBuilder()
+                        .setCurrencyCode(currencyCode)
+                        .setRate(FixedPoint.toDouble(samples.scaledRates()[i], RateHistory.SCALE))
+                        .setRateMantissa(samples.scaledRates()[i])
+                        .setRateScale(RateHistory.SCALE)
+                        .setEpochMillis(samples.epochSeconds()[i] * 1_000)
+                        .setTimestamp(stringTimestampEnabled ? ExchangeRateEngine.formatTimestamp(Instant.ofEpochSecond(samples.epochSeconds()[i])) : "")
+                        .build());
+                },
+                e -> {
+                    LOG.error("Error getting rate history for " + currencyCode, e);
+                    responseObserver.onError(e);
+                });
     }
 
-    private ExchangeRateData calculateRate(String currencyCode, LocalDateTime timestamp) {
-        BigDecimal baseRate = ExchangeRateData.EXCHANGE_RATES.get(currencyCode);
-        if (baseRate == null) {
-            throw new IllegalArgumentException("Unsupported currency: " + currencyCode);
-        }
+    @Override
+    public Uni<CandleListResponse> getCandles(CandleRequest request) {
+        LOG.debugf("Getting %s candles for currency: %s", request.getResolution(), request.getCurrencyCode());
+
+        return Uni.createFrom().item(() -> {
+                CandleAggregator.Candles candles = candleAggregator.candles(request.getCurrencyCode(), request.getResolution(), request.getLimit());
+
+                CandleListResponse.Builder responseBuilder = CandleListResponse.newBuilder()
+                    .setCurrencyCode(request.getCurrencyCode())
+                    .setResolution(request.getResolution());
+                for (int i = 0; i < candles.size(); i++) {
+                    responseBuilder.addStartEpochSeconds(candles.startEpochSeconds()[i])
+                        .addOpen(FixedPoint.toDouble(candles.open()[i], RateHistory.SCALE))
+                        .addHigh(FixedPoint.toDouble(candles.high()[i], RateHistory.SCALE))
+                        .addLow(FixedPoint.toDouble(candles.low()[i], RateHistory.SCALE))
+                        .addClose(FixedPoint.toDouble(candles.close()[i], RateHistory.SCALE));
+                }
+                return responseBuilder.build();
+            })
+            // Up to the whole candle capacity to copy and encode
+            .runSubscriptionOn(Infrastructure.getDefaultWorkerPool())
+            .onFailure().invoke(e -> LOG.error("Error getting candles for " + request.getCurrencyCode(), e));
+    }
 
-        // Generate fluctuation using current timestamp + currency-specific seed
-        long seed = CURRENCY_SEEDS.get(currencyCode);
-        long currentTime = System.currentTimeMillis() / 1_000; // Convert to seconds
-        double fluctuation = Math.sin(currentTime + seed) * fluctuationFactor;
+    private void streamRates(Empty request, StreamObserver<ExchangeRateListResponse> responseObserver) {
+        LOG.debug("Subscribing to the exchange rate stream");
 
-        BigDecimal rate = baseRate.add(BigDecimal.valueOf(fluctuation))
-            .setScale(4, RoundingMode.HALF_UP);
+        // Sends the current rates straight away so the subscriber doesn't wait for the next tick
+        rateFanOut.subscribe(responseObserver, exchangeRateEngine.current());
+    }
+
+    private void subscribeThresholds(ThresholdSubscriptionRequest request, StreamObserver<ExchangeRate> responseObserver) {
+        LOG.debugf("Subscribing to %d rate thresholds", request.getThresholdsCount());
+
+        try {
+            // Nothing is sent until a rate moves by its threshold
+            thresholdSubscriptions.subscribe(request.getThresholdsList(), responseObserver, exchangeRateEngine.current());
 
-        // Ensure JPY has appropriate scale (2 decimal places)
-        if ("JPY".equals(currencyCode)) {
-            rate = rate.setScale(2, RoundingMode.HALF_UP);
+        } catch (Exception e) {
+            LOG.error("Error subscribing to rate thresholds", e);
+            responseObserver.onError(e);
         }
+    }
 
-        return new ExchangeRateData(currencyCode, rate, timestamp);
+    @Scheduled(every = "{exchange-rates.stream.interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void publishRates() {
+        RateSnapshot snapshot = exchangeRateEngine.current();
+        rateFanOut.publish(snapshot);
     }
 
-    private ExchangeRate convertToGrpcExchangeRate(ExchangeRateData rate) {
-        return ExchangeRate.newBuilder()
-            .setCurrencyCode(rate.currencyCode())
-            .setRate(rate.rate().doubleValue())
-            .setTimestamp(rate.timestamp().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
-            .build();
+    /**
+     * Sends a finite stream of messages only while the transport is ready, then resumes when it is ready again.
+     * A slow client doesn't make the server buffer the whole stream.
+     */
+    private static final class FlowControlledSender<T> implements Runnable {
+
+        private final StreamObserver<T> responseObserver;
+        private int count;
+        private IntFunction<T> message;
+        private int next;
+        private boolean completed;
+
+        /**
+         * Must be created while the call starts, the only time the ready handler can be set.
+         */
+        FlowControlledSender(StreamObserver<T> responseObserver) {
+            this.responseObserver = responseObserver;
+            if (responseObserver instanceof ServerCallStreamObserver<T> serverObserver) {
+                serverObserver.setOnReadyHandler(this);
+            }
+        }
+
+        synchronized void send(int count, IntFunction<T> message) {
+            this.count = count;
+            this.message = message;
+            run();
+        }
+
+        @Override
+        public synchronized void run() {
+            // Ready before the messages are known
+            if (message == null) {
+                return;
+            }
+            ServerCallStreamObserver<T> serverObserver = responseObserver instanceof ServerCallStreamObserver<T> observer ? observer : null;
+            while (next < count) {
+                if (serverObserver != null && (serverObserver.isCancelled() || !serverObserver.isReady())) {
+                    return;
+                }
+                responseObserver.onNext(message.apply(next++));
+            }
+            if (!completed) {
+                completed = true;
+                responseObserver.onCompleted();
+            }
+        }
     }
-}
\ No newline at end of file
+}
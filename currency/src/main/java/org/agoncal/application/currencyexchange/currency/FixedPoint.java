@@ -0,0 +1,90 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import java.math.BigDecimal;
+
+/**
+ * Exact decimal number held as a long mantissa and a number of decimal places:
+ * 0.9217 is {@code FixedPoint(9217, 4)}. It is what the gRPC ExchangeRate carries
+ * in {@code rate_mantissa} and {@code rate_scale}, so a rate goes from the engine
+ * to the trades without BigDecimal allocations or double rounding.
+ * Arithmetic overflows throw an {@link ArithmeticException}, like {@link Math#multiplyExact}.
+ */
+public record FixedPoint(long mantissa, int scale) {
+
+    public static final int MAX_SCALE = 18;
+
+    private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_SCALE; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    public FixedPoint {
+        if (scale < 0 || scale > MAX_SCALE) {
+            throw new ArithmeticException("Scale out of range: " + scale);
+        }
+    }
+
+    public static FixedPoint of(long mantissa, int scale) {
+        return new FixedPoint(mantissa, scale);
+    }
+
+    public static FixedPoint of(BigDecimal value) {
+        if (value.scale() < 0) {
+            value = value.setScale(0);
+        } else if (value.scale() > MAX_SCALE) {
+            value = value.stripTrailingZeros();
+        }
+        return new FixedPoint(value.unscaledValue().longValueExact(), value.scale());
+    }
+
+    /**
+     * @return the value multiplied by 10^scale and rounded, e.g. {@code scaled(0.92174, 4)} is 9217
+     */
+    public static long scaled(double value, int scale) {
+        return Math.round(value * POWERS_OF_TEN[scale]);
+    }
+
+    public static double toDouble(long mantissa, int scale) {
+        return (double) mantissa / POWERS_OF_TEN[scale];
+    }
+
+    /**
+     * @return the mantissa of this value at the given scale, rounded half up when decimals are dropped
+     */
+    public long scaledTo(int newScale) {
+        if (newScale == scale) {
+            return mantissa;
+        }
+        if (newScale < 0 || newScale > MAX_SCALE) {
+            throw new ArithmeticException("Scale out of range: " + newScale);
+        }
+        if (newScale > scale) {
+            return Math.multiplyExact(mantissa, POWERS_OF_TEN[newScale - scale]);
+        }
+        long divisor = POWERS_OF_TEN[scale - newScale];
+        long quotient = mantissa / divisor;
+        long remainder = Math.abs(mantissa % divisor);
+        return remainder >= divisor - remainder ? quotient + Long.signum(mantissa) : quotient;
+    }
+
+    public FixedPoint withScale(int newScale) {
+        return newScale == scale ? this : new FixedPoint(scaledTo(newScale), newScale);
+    }
+
+    public double toDouble() {
+        return toDouble(mantissa, scale);
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(mantissa, scale);
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
@@ -0,0 +1,192 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import io.quarkus.arc.lookup.LookupIfProperty;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+
+/**
+ * Stress source: rates follow a correlated geometric Brownian motion, one step per tick.
+ * The log rate of currency i moves by {@code drift - covariance[i][i] / 2 + (L z)[i]}, where
+ * z are independent standard normals and L is the Cholesky factor of the covariance matrix.
+ * Steps are generated in bulk, a block of steps at a time, with plain loops over primitive arrays.
+ * With the same seed (and a simulated clock) the rates are the same from one run to another.
+ */
+@ApplicationScoped
+@LookupIfProperty(name = "exchange-rates.source", stringValue = "gbm")
+public class GbmRateSource implements RateSource {
+
+    static final int BLOCK_SIZE = 1024;
+
+    // Above that many steps in one go, a single step with the same distribution is drawn instead
+    private static final int MAX_STEPS = 16 * BLOCK_SIZE;
+
+    private static final double SCALE_FACTOR = Math.pow(10, RateHistory.SCALE);
+
+    // Drift of the log rates per tick
+    @ConfigProperty(name = "exchange-rates.gbm.drift", defaultValue = "0")
+    double drift;
+
+    // Volatility of the log rates per tick, used when there is no covariance matrix
+    @ConfigProperty(name = "exchange-rates.gbm.volatility", defaultValue = "0.0005")
+    double volatility;
+
+    // Correlation between any two currencies, used when there is no covariance matrix
+    @ConfigProperty(name = "exchange-rates.gbm.correlation", defaultValue = "0.3")
+    double correlation;
+
+    // Covariance matrix of the log rates per tick, row by row, in the order of the currency ids (alphabetical)
+    @ConfigProperty(name = "exchange-rates.gbm.covariance")
+    Optional<List<Double>> covariance;
+
+    @ConfigProperty(name = "exchange-rates.gbm.seed", defaultValue = "42")
+    long seed;
+
+    @Inject
+    CurrencyRegistry currencyRegistry;
+
+    private int size;
+    // Lower triangular Cholesky factor of the covariance matrix, row-major
+    private double[] cholesky;
+    // Drift of each log rate, corrected by its variance (Ito)
+    private double[] driftTerms;
+    private double[] logRates;
+    // Log returns of a long jump, drawn in one go
+    private double[] longStep;
+    // Log returns of the next steps, [step * size + currency id]
+    private double[] block;
+    private int blockPosition;
+    private SplittableRandom random;
+    private long lastTick = Long.MIN_VALUE;
+
+    @PostConstruct
+    void init() {
+        size = currencyRegistry.size();
+        double[] matrix = covarianceMatrix();
+        cholesky = cholesky(matrix, size);
+
+        driftTerms = new double[size];
+        logRates = new double[size];
+        for (int id = 0; id < size; id++) {
+            driftTerms[id] = drift - matrix[id * size + id] / 2;
+            logRates[id] = Math.log(currencyRegistry.baseRate(id).toDouble());
+        }
+        longStep = new double[size];
+        block = new double[BLOCK_SIZE * size];
+        blockPosition = BLOCK_SIZE;
+        random = new SplittableRandom(seed);
+    }
+
+    private double[] covarianceMatrix() {
+        double[] matrix = new double[size * size];
+        if (covariance.isPresent()) {
+            List<Double> values = covariance.get();
+            if (values.size() != size * size) {
+                throw new IllegalArgumentException("Expecting a " + size + "x" + size + " covariance matrix, got " + values.size() + " values");
+            }
+            for (int i = 0; i < matrix.length; i++) {
+                matrix[i] = values.get(i);
+            }
+        } else {
+            double variance = volatility * volatility;
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    matrix[i * size + j] = i == j ? variance : variance * correlation;
+                }
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * @return the lower triangular L such as L x transposed(L) is the matrix
+     */
+    static double[] cholesky(double[] matrix, int size) {
+        double[] lower = new double[size * size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j <= i; j++) {
+                if (matrix[i * size + j] != matrix[j * size + i]) {
+                    throw new IllegalArgumentException("Covariance matrix not symmetric at " + i + "," + j);
+                }
+                double sum = matrix[i * size + j];
+                for (int k = 0; k < j; k++) {
+                    sum -= lower[i * size + k] * lower[j * size + k];
+                }
+                if (i == j) {
+                    if (sum <= 0) {
+                        throw new IllegalArgumentException("Covariance matrix not positive definite");
+                    }
+                    lower[i * size + i] = Math.sqrt(sum);
+                } else {
+                    lower[i * size + j] = sum / lower[j * size + j];
+                }
+            }
+        }
+        return lower;
+    }
+
+    /**
+     * Moves one step per tick since the previous one. A past tick, never requested by the engine, gets the rates of the last one.
+     */
+    @Override
+    public synchronized void rates(long tick, long[] scaledRates) {
+        if (lastTick != Long.MIN_VALUE && tick > lastTick) {
+            advance(tick - lastTick);
+        }
+        lastTick = Math.max(lastTick, tick);
+
+        for (int id = 0; id < size; id++) {
+            scaledRates[id] = Math.round(Math.exp(logRates[id]) * SCALE_FACTOR);
+        }
+    }
+
+    private void advance(long steps) {
+        if (steps > MAX_STEPS) {
+            // The sum of n steps is normal too, with n times the drift and the covariance
+            generate(longStep, 1);
+            double scale = Math.sqrt(steps);
+            for (int id = 0; id < size; id++) {
+                logRates[id] += driftTerms[id] * (steps - scale) + longStep[id] * scale;
+            }
+            return;
+        }
+        for (long step = 0; step < steps; step++) {
+            if (blockPosition == BLOCK_SIZE) {
+                generate(block, BLOCK_SIZE);
+                blockPosition = 0;
+            }
+            int offset = blockPosition++ * size;
+            for (int id = 0; id < size; id++) {
+                logRates[id] += block[offset + id];
+            }
+        }
+    }
+
+    /**
+     * Generates the log returns of the next steps of all the currencies, in bulk.
+     *
+     * @param logReturns filled with [step * size + currency id]
+     */
+    void generate(double[] logReturns, int steps) {
+        double[] z = new double[size];
+        for (int step = 0; step < steps; step++) {
+            for (int j = 0; j < size; j++) {
+                z[j] = random.nextGaussian();
+            }
+            int offset = step * size;
+            for (int i = 0; i < size; i++) {
+                int row = i * size;
+                double shock = 0;
+                for (int j = 0; j <= i; j++) {
+                    shock += cholesky[row + j] * z[j];
+                }
+                logReturns[offset + i] = driftTerms[i] + shock;
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * gRPC marshaller for messages that are already encoded in protobuf.
+ * The bytes are written as they are to the transport, without rebuilding nor re-serializing the message.
+ */
+public final class PreEncodedMarshaller implements MethodDescriptor.Marshaller<byte[]> {
+
+    public static final PreEncodedMarshaller INSTANCE = new PreEncodedMarshaller();
+
+    private PreEncodedMarshaller() {
+    }
+
+    @Override
+    public InputStream stream(byte[] value) {
+        return new PreEncodedStream(value);
+    }
+
+    @Override
+    public byte[] parse(InputStream stream) {
+        try {
+            return stream.readAllBytes();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read pre-encoded message", e);
+        }
+    }
+
+    /**
+     * Exposes its length, so gRPC can frame the message without copying it,
+     * and drains straight into the transport buffer.
+     */
+    private static final class PreEncodedStream extends ByteArrayInputStream implements KnownLength, Drainable {
+
+        PreEncodedStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public int drainTo(OutputStream target) throws IOException {
+            int length = count - pos;
+            target.write(buf, pos, length);
+            pos = count;
+            return length;
+        }
+    }
+}
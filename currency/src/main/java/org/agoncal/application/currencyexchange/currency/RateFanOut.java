@@ -0,0 +1,173 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import jakarta.enterprise.context.ApplicationScoped;
+import org.jboss.logging.Logger;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pushes the rates to the StreamRates subscribers, each one at the pace of its own transport.
+ * A subscriber has one slot per currency holding the latest rate not sent yet: while its transport
+ * is not ready, a newer rate replaces the older one in the slot instead of being buffered.
+ * When the transport is ready again, the pending rates are sent in a single message.
+ * Whatever the tick rate, a subscriber costs one slot per currency.
+ * <p>
+ * The first message of a subscription has all the rates, the next ones only the rates that changed (delta).
+ * Subscribers that are up to date all get the same delta instance, built once per publication.
+ */
+@ApplicationScoped
+public class RateFanOut {
+
+    private static final Logger LOG = Logger.getLogger(RateFanOut.class);
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    // Version of the last published snapshot, only read and written by the publishing thread
+    private long publishedVersion;
+    // Last snapshot published, for the subscribers that joined with an older one
+    private volatile RateSnapshot publishedSnapshot;
+
+    /**
+     * Adds a subscriber and sends it all the current rates, as soon as its transport is ready.
+     */
+    public void subscribe(StreamObserver<ExchangeRateListResponse> responseObserver, RateSnapshot current) {
+        // All the rates are pending before any publication can reach the subscriber, so the first message has them all
+        Subscriber subscriber = new Subscriber(responseObserver, current);
+        if (responseObserver instanceof ServerCallStreamObserver<ExchangeRateListResponse> serverObserver) {
+            serverObserver.setOnCancelHandler(() -> {
+                subscribers.remove(subscriber);
+                LOG.info("Exchange rate stream cancelled, " + subscribers.size() + " subscribers left");
+            });
+            serverObserver.setOnReadyHandler(subscriber::drain);
+        }
+        subscribers.add(subscriber);
+        subscriber.drain();
+
+        // A publication between the current snapshot and the subscription was missed, all its rates are offered
+        RateSnapshot published = publishedSnapshot;
+        if (published != null && published.version() > current.version()) {
+            subscriber.offer(published, allIds(published), published.allRatesResponse());
+        }
+    }
+
+    /**
+     * Offers the rates changed since the last publication to all the subscribers. Must be called by a single thread.
+     */
+    public void publish(RateSnapshot snapshot) {
+        publishedSnapshot = snapshot;
+        if (subscribers.isEmpty() || snapshot.version() <= publishedVersion) {
+            return;
+        }
+
+        long[] changedVersions = snapshot.changedVersions();
+        int[] changedIds = new int[changedVersions.length];
+        int changed = 0;
+        ExchangeRateListResponse.Builder delta = ExchangeRateListResponse.newBuilder()
+            .setVersion(snapshot.version())
+            .setDelta(true);
+        for (int id = 0; id < changedVersions.length; id++) {
+            if (changedVersions[id] > publishedVersion) {
+                changedIds[changed++] = id;
+                delta.addRates(snapshot.grpcRates().get(id));
+            }
+        }
+        publishedVersion = snapshot.version();
+
+        int[] ids = changed == changedIds.length ? changedIds : Arrays.copyOf(changedIds, changed);
+        ExchangeRateListResponse response = delta.build();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(snapshot, ids, response);
+        }
+    }
+
+    public int subscribers() {
+        return subscribers.size();
+    }
+
+    private static int[] allIds(RateSnapshot snapshot) {
+        int[] allIds = new int[snapshot.grpcRates().size()];
+        for (int id = 0; id < allIds.length; id++) {
+            allIds[id] = id;
+        }
+        return allIds;
+    }
+
+    private final class Subscriber {
+
+        private final StreamObserver<ExchangeRateListResponse> responseObserver;
+        // Latest rate not sent yet of each currency, indexed by currency id, null when sent
+        private final ExchangeRate[] pendingRates;
+        private int pendingCount;
+        private long version;
+        private boolean delta;
+        // When the pending rates are exactly the ones of a single publication, its response is sent as is
+        private ExchangeRateListResponse pendingResponse;
+
+        Subscriber(StreamObserver<ExchangeRateListResponse> responseObserver, RateSnapshot current) {
+            this.responseObserver = responseObserver;
+            this.pendingRates = current.grpcRates().toArray(new ExchangeRate[0]);
+            this.pendingCount = pendingRates.length;
+            this.version = current.version();
+            this.pendingResponse = current.allRatesResponse();
+        }
+
+        synchronized void offer(RateSnapshot snapshot, int[] ids, ExchangeRateListResponse response) {
+            // A subscription started after this snapshot already has its rates
+            if (snapshot.version() <= version) {
+                return;
+            }
+            pendingResponse = pendingCount == 0 ? response : null;
+            for (int id : ids) {
+                if (pendingRates[id] == null) {
+                    pendingCount++;
+                }
+                pendingRates[id] = snapshot.grpcRates().get(id);
+            }
+            version = snapshot.version();
+            drain();
+        }
+
+        /**
+         * Sends the pending rates if the transport is ready, also called by gRPC when it becomes ready again.
+         */
+        synchronized void drain() {
+            if (pendingCount == 0 || !isReady()) {
+                return;
+            }
+            ExchangeRateListResponse response = pendingResponse;
+            if (response == null) {
+                ExchangeRateListResponse.Builder builder = ExchangeRateListResponse.newBuilder()
+                    .setVersion(version)
+                    .setDelta(delta);
+                for (ExchangeRate rate : pendingRates) {
+                    if (rate != null) {
+                        builder.addRates(rate);
+                    }
+                }
+                response = builder.build();
+            }
+            Arrays.fill(pendingRates, null);
+            pendingCount = 0;
+            pendingResponse = null;
+            // Only the first message has all the rates
+            delta = true;
+
+            try {
+                responseObserver.onNext(response);
+            } catch (Exception e) {
+                LOG.warn("Removing exchange rate subscriber: " + e.getMessage());
+                subscribers.remove(this);
+            }
+        }
+
+        private boolean isReady() {
+            if (responseObserver instanceof ServerCallStreamObserver<ExchangeRateListResponse> serverObserver) {
+                return !serverObserver.isCancelled() && serverObserver.isReady();
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.Arrays;
+
+/**
+ * Bounded in-memory history of the rates of each supported currency.
+ * Each currency has a ring buffer of primitives (epoch seconds and rates scaled to {@link #SCALE} decimals),
+ * so a sample costs 16 bytes and no object. When a buffer is full, the oldest samples are overwritten.
+ * The capacity is the configured one, unless the currency sets its own in the registry: an hour of ticks
+ * for 150 currencies is about 9 MB, a day for the few that need it about 1.4 MB each.
+ */
+@ApplicationScoped
+public class RateHistory {
+
+    /**
+     * Number of decimals of the scaled rates (1 USD = 0.9217 EUR is stored as 9217).
+     */
+    public static final int SCALE = 4;
+
+    @ConfigProperty(name = "exchange-rates.history.capacity", defaultValue = "3600")
+    int capacity;
+
+    @Inject
+    CurrencyRegistry currencyRegistry;
+
+    // Indexed by currency id
+    private RingBuffer[] buffers;
+    private int maxCapacity;
+
+    @PostConstruct
+    void init() {
+        buffers = new RingBuffer[currencyRegistry.size()];
+        maxCapacity = capacity;
+        for (int id = 0; id < buffers.length; id++) {
+            int currencyCapacity = currencyRegistry.historyCapacity(id, capacity);
+            buffers[id] = new RingBuffer(currencyCapacity);
+            maxCapacity = Math.max(maxCapacity, currencyCapacity);
+        }
+    }
+
+    /**
+     * @return the largest number of samples kept for a currency
+     */
+    public int maxCapacity() {
+        return maxCapacity;
+    }
+
+    /**
+     * Appends a sample. Samples of a currency must be recorded by a single thread, in increasing time order.
+     */
+    public void record(int currencyId, long epochSecond, long scaledRate) {
+        buffers[currencyId].append(epochSecond, scaledRate);
+    }
+
+    /**
+     * @return the samples of the currency between the two epoch seconds (both inclusive), oldest first
+     * @throws IllegalArgumentException if the currency is not supported
+     */
+    public Samples query(String currencyCode, long fromEpochSecond, long toEpochSecond) {
+        int id = currencyRegistry.idOf(currencyCode);
+        if (id < 0) {
+            throw new IllegalArgumentException("Unsupported currency: " + currencyCode);
+        }
+        return buffers[id].query(fromEpochSecond, toEpochSecond);
+    }
+
+    /**
+     * Copy of a range of samples, safe to read while new samples are recorded.
+     */
+    public record Samples(long[] epochSeconds, long[] scaledRates, int size) {
+        static final Samples EMPTY = new Samples(new long[0], new long[0], 0);
+    }
+
+    private static final class RingBuffer {
+
+        private final long[] epochSeconds;
+        private final long[] scaledRates;
+        // Number of samples ever appended, published after the sample is written
+        private volatile long count;
+
+        RingBuffer(int capacity) {
+            this.epochSeconds = new long[capacity];
+            this.scaledRates = new long[capacity];
+        }
+
+        void append(long epochSecond, long scaledRate) {
+            long next = count;
+            int slot = (int) (next % epochSeconds.length);
+            epochSeconds[slot] = epochSecond;
+            scaledRates[slot] = scaledRate;
+            count = next + 1;
+        }
+
+        Samples query(long fromEpochSecond, long toEpochSecond) {
+            long end = count;
+            long start = Math.max(0, end - epochSeconds.length);
+
+            // Samples are in time order, so the range is found by binary search
+            long first = lowerBound(start, end, fromEpochSecond);
+            long last = lowerBound(first, end, toEpochSecond + 1);
+            if (first >= last) {
+                return Samples.EMPTY;
+            }
+
+            int size = (int) (last - first);
+            long[] times = new long[size];
+            long[] rates = new long[size];
+            for (int i = 0; i < size; i++) {
+                int slot = (int) ((first + i) % epochSeconds.length);
+                times[i] = epochSeconds[slot];
+                rates[i] = scaledRates[slot];
+            }
+
+            // Drops the samples the writer may have overwritten while they were copied
+            long overwritten = count - epochSeconds.length - first;
+            if (overwritten > 0) {
+                int skip = (int) Math.min(overwritten, size);
+                return new Samples(Arrays.copyOfRange(times, skip, size), Arrays.copyOfRange(rates, skip, size), size - skip);
+            }
+            return new Samples(times, rates, size);
+        }
+
+        private long lowerBound(long low, long high, long epochSecond) {
+            while (low < high) {
+                long middle = (low + high) >>> 1;
+                if (epochSeconds[(int) (middle % epochSeconds.length)] < epochSecond) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
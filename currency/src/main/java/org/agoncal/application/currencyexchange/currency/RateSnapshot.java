@@ -0,0 +1,72 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Immutable set of all the exchange rates computed for one tick.
+ * A snapshot is published as a whole, so readers never see rates from two different ticks.
+ */
+public record RateSnapshot(
+    long tick,                                     // Tick (epoch second) the rates were computed for
+    long version,                                  // Tick of the last rate change, so it keeps increasing across restarts
+    long[] changedVersions,                        // Version each rate last changed at, indexed by currency id
+    Instant timestamp,                             // When the rates were calculated
+    CurrencyRegistry currencies,                   // Supported currencies, giving the id of each currency code
+    List<ExchangeRateData> rates,                  // All the rates, indexed by currency id
+    List<ExchangeRate> grpcRates,                  // Same rates as gRPC messages, indexed by currency id
+    ExchangeRateListResponse allRatesResponse,     // Same rates as a gRPC response
+    byte[] encodedAllRatesResponse,                // Same gRPC response, already serialized
+    CrossRateMatrix crossRates,                    // Cross rates between all the currencies, USD included
+    LongAdder requests                             // Requests answered from the snapshot, which all shared its computation
+) {
+    public static final RateSnapshot EMPTY = new RateSnapshot(Long.MIN_VALUE, 0, new long[0], null, null, List.of(), List.of(),
+        ExchangeRateListResponse.getDefaultInstance(), new byte[0], null, new LongAdder());
+
+    /**
+     * @return the rate of the currency, or null if it is not supported
+     */
+    public ExchangeRateData rate(String currencyCode) {
+        int id = currencies.idOf(currencyCode);
+        return id < 0 ? null : rates.get(id);
+    }
+
+    /**
+     * @return the rate of the currency as a gRPC message, or null if it is not supported
+     */
+    public ExchangeRate grpcRate(String currencyCode) {
+        int id = currencies.idOf(currencyCode);
+        return id < 0 ? null : grpcRates.get(id);
+    }
+
+    /**
+     * @param ifVersionAfter version of the rates the client already has, 0 for all the rates
+     * @return all the rates, only the ones changed since the version (delta), or none (not modified)
+     */
+    public ExchangeRateListResponse ratesChangedSince(long ifVersionAfter) {
+        // A version from the future comes from another clock, only all the rates are safe
+        if (ifVersionAfter <= 0 || ifVersionAfter > version) {
+            return allRatesResponse;
+        }
+        ExchangeRateListResponse.Builder response = ExchangeRateListResponse.newBuilder().setVersion(version);
+        if (ifVersionAfter == version) {
+            return response.setNotModified(true).build();
+        }
+        response.setDelta(true);
+        for (int id = 0; id < changedVersions.length; id++) {
+            if (changedVersions[id] > ifVersionAfter) {
+                response.addRates(grpcRates.get(id));
+            }
+        }
+        return response.build();
+    }
+
+    /**
+     * Same as {@link #ratesChangedSince}, serialized. All the rates are already serialized in the snapshot.
+     */
+    public byte[] encodedRatesChangedSince(long ifVersionAfter) {
+        ExchangeRateListResponse response = ratesChangedSince(ifVersionAfter);
+        return response == allRatesResponse ? encodedAllRatesResponse : response.toByteArray();
+    }
+}
@@ -0,0 +1,29 @@
+package org.agoncal.application.currencyexchange.currency;
+
+/**
+ * Where the rates come from. The {@link ExchangeRateEngine} pulls the rates of all the
+ * supported currencies from the source selected by {@code exchange-rates.source} once per tick.
+ * <p>
+ * Ticks are requested in increasing order, from a single thread at a time, and a past tick
+ * (at or before the last one requested) is never requested. A stateful source can rely on it
+ * to move one step per tick.
+ */
+public interface RateSource {
+
+    /**
+     * Fills the rates of all the currencies for the tick.
+     *
+     * @param tick        epoch second the rates are computed for, after the previous one requested
+     * @param scaledRates USD rates indexed by currency id, to fill as mantissas at {@link RateHistory#SCALE}
+     */
+    void rates(long tick, long[] scaledRates);
+
+    /**
+     * @return true when the rates of a tick depend on the tick only, so the ticks skipped by the clock
+     * can be requested one by one to fill the history and the candles. False when the rates follow
+     * something else (a replay thread), the skipped ticks are then left out of the history
+     */
+    default boolean generatesSkippedTicks() {
+        return true;
+    }
+}
@@ -0,0 +1,76 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clock that starts at a given instant and then runs at N times the real speed,
+ * and that can also be moved forward programmatically. With the same start, the
+ * rates generated are the same from one run to another, and a day of ticks can
+ * be replayed in seconds.
+ */
+public class SimulatedClock extends Clock {
+
+    private final long startMillis;
+    private final double speed;
+    private final long startNanos;
+    private final ZoneId zone;
+    private final AtomicLong advancedMillis;
+
+    /**
+     * @param speed 1 runs at the real speed, 60 runs one minute per second, 0 only moves with {@link #advance}
+     */
+    public SimulatedClock(Instant start, double speed) {
+        this(start.toEpochMilli(), speed, System.nanoTime(), ZoneId.systemDefault(), new AtomicLong());
+    }
+
+    private SimulatedClock(long startMillis, double speed, long startNanos, ZoneId zone, AtomicLong advancedMillis) {
+        if (speed < 0) {
+            throw new IllegalArgumentException("Invalid clock speed: " + speed);
+        }
+        this.startMillis = startMillis;
+        this.speed = speed;
+        this.startNanos = startNanos;
+        this.zone = zone;
+        this.advancedMillis = advancedMillis;
+    }
+
+    public void advance(Duration duration) {
+        if (duration.isNegative()) {
+            throw new IllegalArgumentException("A clock cannot go back in time: " + duration);
+        }
+        advancedMillis.addAndGet(duration.toMillis());
+    }
+
+    public double speed() {
+        return speed;
+    }
+
+    @Override
+    public long millis() {
+        // Multiplied before the division, so a fast clock moves by less than a second between two real milliseconds
+        long elapsedMillis = speed == 0 ? 0 : (long) ((System.nanoTime() - startNanos) * speed / 1_000_000);
+        return startMillis + elapsedMillis + advancedMillis.get();
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(millis());
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    /**
+     * @return the same clock (advancing one advances the other) in another zone
+     */
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return zone.equals(this.zone) ? this : new SimulatedClock(startMillis, speed, startNanos, zone, advancedMillis);
+    }
+}
@@ -0,0 +1,33 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import io.quarkus.arc.lookup.LookupIfProperty;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * Default source: rates fluctuate around their base rate following a sine of the tick.
+ */
+@ApplicationScoped
+@LookupIfProperty(name = "exchange-rates.source", stringValue = "sine", lookupIfMissing = true)
+public class SineRateSource implements RateSource {
+
+    @ConfigProperty(name = "exchange-rates.fluctuation-factor", defaultValue = "0.02")
+    double fluctuationFactor;
+
+    @Inject
+    CurrencyRegistry currencyRegistry;
+
+    @Override
+    public void rates(long tick, long[] scaledRates) {
+        for (int id = 0; id < scaledRates.length; id++) {
+            long scaledBaseRate = currencyRegistry.baseRate(id).scaledTo(RateHistory.SCALE);
+
+            // Generate fluctuation using current tick + currency-specific seed
+            long seed = currencyRegistry.seed(id);
+            double fluctuation = Math.sin(tick + seed) * fluctuationFactor;
+
+            scaledRates[id] = scaledBaseRate + FixedPoint.scaled(fluctuation, RateHistory.SCALE);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.Liveness;
+
+/**
+ * Reports how many requests were answered from the snapshots, and how many shared the computation of each snapshot.
+ */
+@Liveness
+@ApplicationScoped
+public class SnapshotCoalescingHealthCheck implements HealthCheck {
+
+    @Inject
+    ExchangeRateEngine exchangeRateEngine;
+
+    @Override
+    public HealthCheckResponse call() {
+        return HealthCheckResponse.named("Check snapshot coalescing")
+            .up()
+            .withData("requests", exchangeRateEngine.requests())
+            .withData("snapshots", exchangeRateEngine.snapshots())
+            .withData("requests-per-snapshot", String.valueOf(exchangeRateEngine.requestsPerSnapshot()))
+            .withData("current-snapshot-requests", exchangeRateEngine.current().requests().sum())
+            .build();
+    }
+}
@@ -0,0 +1,259 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.jboss.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Subscriptions that are only pushed a rate when it moved by more than a threshold, in basis points.
+ * Each threshold is a trigger band around a reference rate: it fires when the rate goes above the upper
+ * level or below the lower one, then the band is moved around the new rate. The bands of each currency
+ * are indexed by level in two skip lists, so a tick only visits the triggers that fire:
+ * the head of the upper levels (below the rate) and the tail of the lower levels (above the rate).
+ * Rates are compared scaled to {@link RateHistory#SCALE} decimals.
+ * <p>
+ * Like {@link RateFanOut}, a subscriber is pushed at the pace of its own transport: each trigger has a slot
+ * holding its latest rate not sent yet, sent when the transport is ready.
+ */
+@ApplicationScoped
+public class ThresholdSubscriptions {
+
+    private static final Logger LOG = Logger.getLogger(ThresholdSubscriptions.class);
+
+    private static final long BASIS_POINTS = 10_000;
+
+    @Inject
+    CurrencyRegistry currencyRegistry;
+
+    // Indexed by currency id
+    private Levels[] levels;
+    // Breaks ties between triggers at the same level
+    private final AtomicLong sequence = new AtomicLong();
+    // Version of the last evaluated snapshot, only read and written by the evaluating thread
+    private long evaluatedVersion;
+
+    @PostConstruct
+    void init() {
+        levels = new Levels[currencyRegistry.size()];
+        for (int id = 0; id < levels.length; id++) {
+            levels[id] = new Levels();
+        }
+    }
+
+    /**
+     * Registers the thresholds of a subscriber, the reference rates being the current ones.
+     *
+     * @throws IllegalArgumentException if a currency is not supported or a threshold is not positive
+     */
+    public void subscribe(List<CurrencyThreshold> thresholds, StreamObserver<ExchangeRate> responseObserver, RateSnapshot current) {
+        List<Trigger> triggers = new ArrayList<>();
+        Subscription subscription = new Subscription(responseObserver, triggers);
+        for (CurrencyThreshold threshold : thresholds) {
+            int id = currencyRegistry.idOf(threshold.getCurrencyCode());
+            if (id < 0) {
+                throw new IllegalArgumentException("Unsupported currency: " + threshold.getCurrencyCode());
+            }
+            if (threshold.getBasisPoints() <= 0) {
+                throw new IllegalArgumentException("Threshold of " + threshold.getCurrencyCode() + " must be positive: " + threshold.getBasisPoints());
+            }
+            triggers.add(new Trigger(subscription, triggers.size(), id, threshold.getBasisPoints(), sequence.incrementAndGet()));
+        }
+        subscription.pendingRates = new ExchangeRate[triggers.size()];
+
+        if (responseObserver instanceof ServerCallStreamObserver<ExchangeRate> serverObserver) {
+            serverObserver.setOnCancelHandler(() -> unsubscribe(subscription));
+            serverObserver.setOnReadyHandler(subscription::drain);
+        }
+        for (Trigger trigger : triggers) {
+            synchronized (trigger) {
+                if (subscription.cancelled) {
+                    return;
+                }
+                arm(trigger, current.rates().get(trigger.currencyId).rate().scaledTo(RateHistory.SCALE));
+            }
+        }
+    }
+
+    /**
+     * Fires the triggers of the rates changed since the last evaluation. Must be called by a single thread,
+     * the engine calls it on every tick.
+     */
+    public void evaluate(RateSnapshot snapshot) {
+        if (snapshot.version() <= evaluatedVersion) {
+            return;
+        }
+        long[] changedVersions = snapshot.changedVersions();
+        for (int id = 0; id < changedVersions.length; id++) {
+            if (changedVersions[id] > evaluatedVersion) {
+                fire(id, snapshot.rates().get(id).rate().scaledTo(RateHistory.SCALE), snapshot.grpcRates().get(id));
+            }
+        }
+        evaluatedVersion = snapshot.version();
+    }
+
+    /**
+     * Pushes the rate to the triggers of the currency it crossed, and moves their bands around it.
+     *
+     * @return the number of triggers fired
+     */
+    int fire(int currencyId, long scaledRate, ExchangeRate rate) {
+        // Sequences are positive, so these bounds exclude the levels equal to the rate
+        List<Trigger> fired = new ArrayList<>(levels[currencyId].upper.headMap(new Level(scaledRate, Long.MIN_VALUE)).values());
+        fired.addAll(levels[currencyId].lower.tailMap(new Level(scaledRate, Long.MAX_VALUE)).values());
+
+        int count = 0;
+        for (Trigger trigger : fired) {
+            synchronized (trigger) {
+                // Cancelled, or already moved by a registration racing with this tick
+                if (trigger.subscription.cancelled || !crossed(trigger, scaledRate)) {
+                    continue;
+                }
+                disarm(trigger);
+                arm(trigger, scaledRate);
+            }
+            trigger.subscription.send(trigger, rate);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of armed triggers, all currencies included
+     */
+    public int triggers() {
+        int triggers = 0;
+        for (Levels currencyLevels : levels) {
+            triggers += currencyLevels.upper.size();
+        }
+        return triggers;
+    }
+
+    private static boolean crossed(Trigger trigger, long scaledRate) {
+        return scaledRate > trigger.upper || scaledRate < trigger.lower;
+    }
+
+    private void arm(Trigger trigger, long referenceRate) {
+        // Rounded down: a move of whole scaled units is more than the threshold exactly when it is more than the width
+        long width = Math.abs(referenceRate) * trigger.basisPoints / BASIS_POINTS;
+        trigger.upper = referenceRate + width;
+        trigger.lower = referenceRate - width;
+        levels[trigger.currencyId].upper.put(new Level(trigger.upper, trigger.sequence), trigger);
+        levels[trigger.currencyId].lower.put(new Level(trigger.lower, trigger.sequence), trigger);
+    }
+
+    private void disarm(Trigger trigger) {
+        levels[trigger.currencyId].upper.remove(new Level(trigger.upper, trigger.sequence));
+        levels[trigger.currencyId].lower.remove(new Level(trigger.lower, trigger.sequence));
+    }
+
+    private void unsubscribe(Subscription subscription) {
+        subscription.cancelled = true;
+        for (Trigger trigger : subscription.triggers) {
+            synchronized (trigger) {
+                disarm(trigger);
+            }
+        }
+        LOG.info("Threshold subscription cancelled, " + triggers() + " triggers left");
+    }
+
+    private static final class Levels {
+
+        final ConcurrentSkipListMap<Level, Trigger> upper = new ConcurrentSkipListMap<>();
+        final ConcurrentSkipListMap<Level, Trigger> lower = new ConcurrentSkipListMap<>();
+    }
+
+    private record Level(long scaledRate, long sequence) implements Comparable<Level> {
+
+        @Override
+        public int compareTo(Level other) {
+            int comparison = Long.compare(scaledRate, other.scaledRate);
+            return comparison != 0 ? comparison : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static final class Trigger {
+
+        final Subscription subscription;
+        // Index of the trigger in its subscription
+        final int index;
+        final int currencyId;
+        final long basisPoints;
+        final long sequence;
+        // Guarded by the trigger
+        long upper;
+        long lower;
+
+        Trigger(Subscription subscription, int index, int currencyId, long basisPoints, long sequence) {
+            this.subscription = subscription;
+            this.index = index;
+            this.currencyId = currencyId;
+            this.basisPoints = basisPoints;
+            this.sequence = sequence;
+        }
+    }
+
+    private final class Subscription {
+
+        final StreamObserver<ExchangeRate> responseObserver;
+        final List<Trigger> triggers;
+        volatile boolean cancelled;
+        // Latest rate not sent yet of each trigger, indexed by trigger index, null when sent
+        ExchangeRate[] pendingRates;
+        private int pendingCount;
+
+        Subscription(StreamObserver<ExchangeRate> responseObserver, List<Trigger> triggers) {
+            this.responseObserver = responseObserver;
+            this.triggers = triggers;
+        }
+
+        /**
+         * Replaces the pending rate of the trigger, then sends the pending rates if the transport is ready.
+         */
+        synchronized void send(Trigger trigger, ExchangeRate rate) {
+            if (pendingRates[trigger.index] == null) {
+                pendingCount++;
+            }
+            pendingRates[trigger.index] = rate;
+            drain();
+        }
+
+        /**
+         * Sends the pending rates while the transport is ready, also called by gRPC when it becomes ready again.
+         */
+        synchronized void drain() {
+            for (int index = 0; index < pendingRates.length && pendingCount > 0; index++) {
+                ExchangeRate rate = pendingRates[index];
+                if (rate == null) {
+                    continue;
+                }
+                if (cancelled || !isReady()) {
+                    return;
+                }
+                pendingRates[index] = null;
+                pendingCount--;
+                try {
+                    responseObserver.onNext(rate);
+                } catch (Exception e) {
+                    LOG.warn("Removing threshold subscriber: " + e.getMessage());
+                    unsubscribe(this);
+                    return;
+                }
+            }
+        }
+
+        private boolean isReady() {
+            if (responseObserver instanceof ServerCallStreamObserver<ExchangeRate> serverObserver) {
+                return !serverObserver.isCancelled() && serverObserver.isReady();
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import io.quarkus.arc.lookup.LookupIfProperty;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a historical tick file, so the whole stack can be load tested with realistic
+ * volumes and no market feed. The file is memory-mapped by windows, so it can be larger
+ * than the memory, and is either:
+ * <ul>
+ *     <li>CSV: one {@code epoch_millis,currency_code,rate} line per tick (1700000000000,EUR,0.9217)</li>
+ *     <li>binary: the {@code TICK} magic and a version (int 1), then 20 bytes big-endian records
+ *     made of the epoch millis (long), the ASCII currency code (4 bytes, zero padded)
+ *     and the rate mantissa at {@link RateHistory#SCALE} (long)</li>
+ * </ul>
+ * Ticks must be in time order. A reader thread parses the file into a fixed pool of batches,
+ * and a replay thread paces the ticks (real time, accelerated or as fast as possible) and
+ * keeps the latest rate of each currency. When the replay is behind, the pool runs out and
+ * the reader waits, so the read ahead stays bounded whatever the size of the file.
+ * Ticks of currencies that are not supported, and malformed lines, are skipped.
+ */
+@ApplicationScoped
+@LookupIfProperty(name = "exchange-rates.source", stringValue = "replay")
+public class TickFileRateSource implements RateSource {
+
+    private static final Logger LOG = Logger.getLogger(TickFileRateSource.class);
+
+    static final int BINARY_MAGIC = 0x5449434B; // "TICK"
+    static final int BINARY_VERSION = 1;
+    static final int BINARY_HEADER_SIZE = 8;
+    static final int BINARY_RECORD_SIZE = 20;
+
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+    private static final int BATCH_SIZE = 4096;
+    private static final int BATCHES = 16;
+
+    @ConfigProperty(name = "exchange-rates.replay.file")
+    Optional<String> file;
+
+    // 1 replays in real time, 60 replays one minute per second, 0 replays as fast as possible
+    @ConfigProperty(name = "exchange-rates.replay.speed", defaultValue = "1")
+    double speed;
+
+    // Starts again from the beginning of the file once it is replayed
+    @ConfigProperty(name = "exchange-rates.replay.loop", defaultValue = "true")
+    boolean loop;
+
+    @Inject
+    CurrencyRegistry currencyRegistry;
+
+    // Supported currency codes packed in longs (see pack), sorted, so index = currency id
+    private long[] packedCodes;
+    // Latest replayed rate of each currency, indexed by currency id
+    private AtomicLongArray latestRates;
+
+    private final BlockingQueue<Batch> freeBatches = new ArrayBlockingQueue<>(BATCHES);
+    private final BlockingQueue<Batch> filledBatches = new ArrayBlockingQueue<>(BATCHES);
+    private Thread reader;
+    private Thread replayer;
+    private volatile boolean running;
+    private volatile boolean finished;
+    private volatile long replayedTicks;
+    private volatile long skippedTicks;
+    // Only written by the reader thread
+    private volatile long malformedTicks;
+
+    @PostConstruct
+    void init() {
+        Path path = Path.of(file.orElseThrow(() -> new IllegalStateException("exchange-rates.replay.file is required by the replay rate source")));
+
+        packedCodes = new long[currencyRegistry.size()];
+        latestRates = new AtomicLongArray(currencyRegistry.size());
+        for (int id = 0; id < currencyRegistry.size(); id++) {
+            packedCodes[id] = pack(currencyRegistry.code(id));
+            // Until the first tick of a currency is replayed
+            latestRates.set(id, currencyRegistry.baseRate(id).scaledTo(RateHistory.SCALE));
+            // The registry sorts the codes alphabetically, which is also the order of the packed codes
+            if (id > 0 && packedCodes[id] <= packedCodes[id - 1]) {
+                throw new IllegalStateException("Currency codes are not sorted: " + currencyRegistry.code(id));
+            }
+        }
+        for (int i = 0; i < BATCHES; i++) {
+            freeBatches.add(new Batch());
+        }
+
+        LOG.info("Replaying " + path + " at speed " + speed);
+        running = true;
+        reader = Thread.ofPlatform().name("tick-file-reader").daemon().start(() -> read(path));
+        replayer = Thread.ofPlatform().name("tick-file-replay").daemon().start(this::replay);
+    }
+
+    @PreDestroy
+    void destroy() {
+        running = false;
+        if (reader != null) {
+            reader.interrupt();
+            replayer.interrupt();
+        }
+    }
+
+    /**
+     * Whatever the tick, the latest rates replayed so far.
+     */
+    @Override
+    public void rates(long tick, long[] scaledRates) {
+        for (int id = 0; id < scaledRates.length; id++) {
+            scaledRates[id] = latestRates.get(id);
+        }
+    }
+
+    /**
+     * The replay has its own pace, past ticks are not replayed again.
+     */
+    @Override
+    public boolean generatesSkippedTicks() {
+        return false;
+    }
+
+    /**
+     * @return true once the whole file is replayed (never when looping)
+     */
+    public boolean finished() {
+        return finished;
+    }
+
+    public long replayedTicks() {
+        return replayedTicks;
+    }
+
+    /**
+     * @return the number of ticks skipped, because of an unsupported currency or a malformed CSV line
+     */
+    public long skippedTicks() {
+        return skippedTicks + malformedTicks;
+    }
+
+    // Reader thread
+
+    private void read(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            do {
+                readOnce(channel);
+                Batch endOfFile = freeBatches.take();
+                endOfFile.endOfFile = true;
+                filledBatches.put(endOfFile);
+            } while (loop && running);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Error reading the tick file " + path, e);
+        }
+    }
+
+    private void readOnce(FileChannel channel) throws IOException, InterruptedException {
+        long size = channel.size();
+        boolean binary = isBinary(channel, size);
+        long position = binary ? BINARY_HEADER_SIZE : 0;
+
+        Batch batch = freeBatches.take();
+        while (position < size && running) {
+            long length = Math.min(WINDOW_SIZE, size - position);
+            boolean lastWindow = position + length == size;
+            ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+            while (true) {
+                if (binary) {
+                    parseBinary(window, batch);
+                } else {
+                    parseCsv(window, lastWindow, batch);
+                }
+                if (batch.size < BATCH_SIZE) {
+                    break; // No complete record left in the window
+                }
+                filledBatches.put(batch);
+                batch = freeBatches.take();
+            }
+
+            if (lastWindow) {
+                break;
+            }
+            if (window.position() == 0) {
+                throw new IOException("Tick record larger than " + WINDOW_SIZE + " bytes at position " + position);
+            }
+            // The next window starts with the record cut by the end of this one
+            position += window.position();
+        }
+
+        if (batch.size > 0) {
+            filledBatches.put(batch);
+        } else {
+            freeBatches.put(batch);
+        }
+    }
+
+    private static boolean isBinary(FileChannel channel, long size) throws IOException {
+        if (size < BINARY_HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(BINARY_HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        if (header.getInt() != BINARY_MAGIC) {
+            return false;
+        }
+        int version = header.getInt();
+        if (version != BINARY_VERSION) {
+            throw new IOException("Unsupported tick file version: " + version);
+        }
+        return true;
+    }
+
+    private void parseBinary(ByteBuffer window, Batch batch) {
+        while (batch.size < BATCH_SIZE && window.remaining() >= BINARY_RECORD_SIZE) {
+            long epochMillis = window.getLong();
+            long packedCode = (window.getInt() & 0xFFFFFFFFL) << 32;
+            long scaledRate = window.getLong();
+            batch.add(epochMillis, currencyId(packedCode), scaledRate);
+        }
+    }
+
+    private void parseCsv(ByteBuffer window, boolean lastWindow, Batch batch) {
+        int limit = window.limit();
+        while (batch.size < BATCH_SIZE && window.position() < limit) {
+            int start = window.position();
+            int end = start;
+            while (end < limit && window.get(end) != '\n') {
+                end++;
+            }
+            if (end == limit && !lastWindow) {
+                return; // Incomplete line, read again at the start of the next window
+            }
+            parseCsvLine(window, start, end, batch);
+            window.position(Math.min(end + 1, limit));
+        }
+    }
+
+    /**
+     * Parses the line in place, without creating strings. Blank lines, the header and comments are skipped.
+     */
+    private void parseCsvLine(ByteBuffer window, int start, int end, Batch batch) {
+        if (end > start && window.get(end - 1) == '\r') {
+            end--;
+        }
+        if (start == end || !isDigit(window.get(start))) {
+            return;
+        }
+
+        int i = start;
+        long epochMillis = 0;
+        while (i < end && isDigit(window.get(i))) {
+            epochMillis = epochMillis * 10 + (window.get(i++) - '0');
+        }
+        if (i == end || window.get(i++) != ',') {
+            malformedTicks++;
+            return;
+        }
+
+        long packedCode = 0;
+        int shift = 56;
+        while (i < end && window.get(i) != ',' && shift >= 0) {
+            packedCode |= (window.get(i++) & 0xFFL) << shift;
+            shift -= 8;
+        }
+        if (i == end || window.get(i++) != ',') {
+            malformedTicks++;
+            return;
+        }
+
+        long mantissa = 0;
+        int scale = -1;
+        while (i < end) {
+            byte b = window.get(i++);
+            if (b == '.' && scale < 0) {
+                scale = 0;
+            } else if (isDigit(b) && scale < FixedPoint.MAX_SCALE) {
+                mantissa = mantissa * 10 + (b - '0');
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else {
+                malformedTicks++;
+                return;
+            }
+        }
+        batch.add(epochMillis, currencyId(packedCode), FixedPoint.of(mantissa, Math.max(scale, 0)).scaledTo(RateHistory.SCALE));
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private int currencyId(long packedCode) {
+        int id = Arrays.binarySearch(packedCodes, packedCode);
+        return id < 0 ? -1 : id;
+    }
+
+    /**
+     * Packs an ASCII code of up to 8 characters in a long, first character in the highest byte,
+     * so the packed codes sort like the codes.
+     */
+    static long pack(String currencyCode) {
+        if (currencyCode.length() > Long.BYTES) {
+            throw new IllegalStateException("Currency code too long to be replayed: " + currencyCode);
+        }
+        long packedCode = 0;
+        for (int i = 0; i < currencyCode.length(); i++) {
+            char c = currencyCode.charAt(i);
+            if (c == 0 || c > 0x7F) {
+                throw new IllegalStateException("Currency code not in ASCII: " + currencyCode);
+            }
+            packedCode |= (long) c << (56 - i * 8);
+        }
+        return packedCode;
+    }
+
+    // Replay thread
+
+    private void replay() {
+        long firstEpochMillis = Long.MIN_VALUE;
+        long startNanos = System.nanoTime();
+        long dueNanos = startNanos;
+        long replayed = 0;
+        long skipped = 0;
+        try {
+            while (running) {
+                Batch batch = filledBatches.take();
+                if (batch.endOfFile) {
+                    finished = !loop;
+                    if (finished) {
+                        LOG.info("Tick file replayed: " + replayedTicks + " ticks, " + skippedTicks() + " skipped");
+                    } else {
+                        LOG.debug("Tick file replayed, starting again: " + replayedTicks + " ticks, " + skippedTicks() + " skipped");
+                    }
+                    // The next loop starts one (paced) second after the last tick
+                    firstEpochMillis = Long.MIN_VALUE;
+                    startNanos = speed > 0 ? dueNanos + (long) (1_000_000_000 / speed) : System.nanoTime();
+                }
+
+                for (int i = 0; i < batch.size; i++) {
+                    long epochMillis = batch.epochMillis[i];
+                    if (firstEpochMillis == Long.MIN_VALUE) {
+                        firstEpochMillis = epochMillis;
+                    }
+                    if (speed > 0) {
+                        dueNanos = startNanos + (long) ((epochMillis - firstEpochMillis) * 1_000_000 / speed);
+                        waitUntil(dueNanos);
+                    }
+
+                    int id = batch.currencyIds[i];
+                    if (id < 0) {
+                        skipped++;
+                    } else {
+                        latestRates.lazySet(id, batch.scaledRates[i]);
+                        replayed++;
+                    }
+                }
+                replayedTicks = replayed;
+                skippedTicks = skipped;
+
+                batch.clear();
+                freeBatches.put(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void waitUntil(long dueNanos) throws InterruptedException {
+        long delay = dueNanos - System.nanoTime();
+        while (delay > 0) {
+            LockSupport.parkNanos(delay);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            delay = dueNanos - System.nanoTime();
+        }
+    }
+
+    /**
+     * Ticks handed from the reader to the replay thread, in columns.
+     */
+    private static final class Batch {
+        final long[] epochMillis = new long[BATCH_SIZE];
+        final int[] currencyIds = new int[BATCH_SIZE];
+        final long[] scaledRates = new long[BATCH_SIZE];
+        int size;
+        boolean endOfFile;
+
+        void add(long epochMillis, int currencyId, long scaledRate) {
+            this.epochMillis[size] = epochMillis;
+            this.currencyIds[size] = currencyId;
+            this.scaledRates[size] = scaledRate;
+            size++;
+        }
+
+        void clear() {
+            size = 0;
+            endOfFile = false;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import io.grpc.Drainable;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.time.Clock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Micro benchmark of the bytes allocated to serve one GetAllCurrentRates call:
+ * building and serializing the response on every call (before), or writing the
+ * response pre-encoded in the snapshot (after). Allocations do not depend on the
+ * speed of the machine, so it runs with the unit tests.
+ */
+class AllRatesResponseAllocationTest {
+
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 100_000;
+    // The stream wrapping the pre-encoded bytes, nothing proportional to the rates
+    private static final long MAX_PRE_ENCODED_BYTES = 128;
+
+    private static final Logger LOG = Logger.getLogger(AllRatesResponseAllocationTest.class);
+
+    private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    void preEncodedResponseShouldAllocateLessThanBuildingTheResponse() throws IOException {
+        RateSnapshot snapshot = TestEngines.engine(Clock.systemDefaultZone()).current();
+
+        for (int i = 0; i < WARMUP; i++) {
+            buildAndWrite(snapshot);
+            writePreEncoded(snapshot);
+        }
+
+        long before = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            buildAndWrite(snapshot);
+        }
+        long buildPerCall = (allocatedBytes() - before) / ITERATIONS;
+
+        before = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            writePreEncoded(snapshot);
+        }
+        long preEncodedPerCall = (allocatedBytes() - before) / ITERATIONS;
+
+        LOG.infof("GetAllCurrentRates allocation per call: %d bytes built, %d bytes pre-encoded", buildPerCall, preEncodedPerCall);
+        assertTrue(preEncodedPerCall <= MAX_PRE_ENCODED_BYTES, preEncodedPerCall + " bytes allocated per pre-encoded call");
+        assertTrue(preEncodedPerCall * 10 < buildPerCall, preEncodedPerCall + " bytes pre-encoded, " + buildPerCall + " bytes built");
+    }
+
+    /**
+     * What the service did before: convert every rate, format every timestamp and serialize the response.
+     */
+    @SuppressWarnings("deprecation") // The string timestamp was always sent before
+    private static void buildAndWrite(RateSnapshot snapshot) throws IOException {
+        ExchangeRateListResponse.Builder responseBuilder = ExchangeRateListResponse.newBuilder();
+        for (ExchangeRateData rate : snapshot.rates()) {
+            responseBuilder.addRates(ExchangeRate.newBuilder()
+                .setCurrencyCode(rate.currencyCode())
+                .setRate(rate.rate().toDouble())
+                .setRateMantissa(rate.rate().mantissa())
+                .setRateScale(rate.rate().scale())
+                .setEpochMillis(rate.timestamp().toEpochMilli())
+                .setTimestamp(ExchangeRateEngine.formatTimestamp(rate.timestamp()))
+                .build());
+        }
+        InputStream stream = ExchangeRateServiceGrpc.getGetAllCurrentRatesMethod().streamResponse(responseBuilder.build());
+        ((Drainable) stream).drainTo(OutputStream.nullOutputStream());
+    }
+
+    private static void writePreEncoded(RateSnapshot snapshot) throws IOException {
+        InputStream stream = PreEncodedMarshaller.INSTANCE.stream(snapshot.encodedAllRatesResponse());
+        ((Drainable) stream).drainTo(OutputStream.nullOutputStream());
+    }
+
+    private long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().threadId());
+    }
+}
@@ -0,0 +1,89 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CandleAggregatorTest {
+
+    private CurrencyRegistry currencyRegistry;
+    private CandleAggregator aggregator;
+
+    @BeforeEach
+    void setUp() {
+        currencyRegistry = new CurrencyRegistry();
+        currencyRegistry.currenciesFile = Optional.empty();
+        currencyRegistry.init();
+        aggregator = new CandleAggregator();
+        aggregator.currencyRegistry = currencyRegistry;
+        aggregator.capacity = 5;
+        aggregator.init();
+    }
+
+    @Test
+    void shouldAggregateTicksIntoMinuteCandles() {
+        // Two ticks in the first minute, three in the second one
+        aggregator.update(currencyRegistry.idOf("EUR"), 60, 9_200);
+        aggregator.update(currencyRegistry.idOf("EUR"), 61, 9_250);
+        aggregator.update(currencyRegistry.idOf("EUR"), 120, 9_100);
+        aggregator.update(currencyRegistry.idOf("EUR"), 150, 9_000);
+        aggregator.update(currencyRegistry.idOf("EUR"), 179, 9_050);
+
+        CandleAggregator.Candles candles = aggregator.candles("EUR", CandleResolution.ONE_MINUTE, 0);
+
+        assertEquals(2, candles.size());
+        assertArrayEquals(new long[]{60, 120}, candles.startEpochSeconds());
+        assertArrayEquals(new long[]{9_200, 9_100}, candles.open());
+        assertArrayEquals(new long[]{9_250, 9_100}, candles.high());
+        assertArrayEquals(new long[]{9_200, 9_000}, candles.low());
+        assertArrayEquals(new long[]{9_250, 9_050}, candles.close());
+    }
+
+    @Test
+    void shouldReturnTheLatestCandles() {
+        for (long second = 0; second < 8; second++) {
+            aggregator.update(currencyRegistry.idOf("EUR"), second, second);
+        }
+
+        // Only 5 one-second candles are kept, and the limit returns the latest ones
+        assertEquals(5, aggregator.candles("EUR", CandleResolution.ONE_SECOND, 0).size());
+        CandleAggregator.Candles candles = aggregator.candles("EUR", CandleResolution.ONE_SECOND, 2);
+        assertArrayEquals(new long[]{6, 7}, candles.startEpochSeconds());
+
+        // All the ticks are in the same day
+        CandleAggregator.Candles daily = aggregator.candles("EUR", CandleResolution.ONE_DAY, 0);
+        assertEquals(1, daily.size());
+        assertEquals(0, daily.open()[0]);
+        assertEquals(7, daily.high()[0]);
+        assertEquals(7, daily.close()[0]);
+    }
+
+    @Test
+    void shouldKeepTheCapacityOfTheCurrency() throws IOException {
+        currencyRegistry.load(new StringReader("""
+            EUR,0.9217,4,4000,,8
+            GBP,0.7905,4,5000
+            """));
+        aggregator.init();
+
+        for (long second = 0; second < 10; second++) {
+            aggregator.update(currencyRegistry.idOf("EUR"), second, 9_200);
+            aggregator.update(currencyRegistry.idOf("GBP"), second, 7_900);
+        }
+
+        assertEquals(8, aggregator.candles("EUR", CandleResolution.ONE_SECOND, 0).size());
+        assertEquals(5, aggregator.candles("GBP", CandleResolution.ONE_SECOND, 0).size());
+        // A limit above the capacity returns what is kept
+        assertEquals(8, aggregator.candles("EUR", CandleResolution.ONE_SECOND, 100).size());
+    }
+
+    @Test
+    void shouldRejectUnsupportedCurrency() {
+        assertThrows(IllegalArgumentException.class, () -> aggregator.candles("INVALID", CandleResolution.ONE_MINUTE, 0));
+    }
+}
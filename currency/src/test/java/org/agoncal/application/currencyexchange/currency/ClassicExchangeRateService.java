@@ -0,0 +1,105 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.jboss.logging.Logger;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The service as it was before the Mutiny implementation, for the load test to compare with: StreamObserver callbacks,
+ * string-concatenated LOG.info calls and the rates calculated with BigDecimal on every call, on the event loop.
+ * StreamRates is added the same way: every subscriber gets all the rates, calculated for it, at each {@link #publish()}.
+ */
+@SuppressWarnings("deprecation") // The classic service only sends the string timestamp
+final class ClassicExchangeRateService extends ExchangeRateServiceGrpc.ExchangeRateServiceImplBase {
+
+    private static final Logger LOG = Logger.getLogger(ClassicExchangeRateService.class);
+
+    private final CurrencyRegistry currencyRegistry;
+    private final double fluctuationFactor;
+    private final List<StreamObserver<ExchangeRateListResponse>> subscribers = new CopyOnWriteArrayList<>();
+
+    ClassicExchangeRateService(CurrencyRegistry currencyRegistry, double fluctuationFactor) {
+        this.currencyRegistry = currencyRegistry;
+        this.fluctuationFactor = fluctuationFactor;
+    }
+
+    @Override
+    public void getCurrentRate(CurrencyRequest request, StreamObserver<ExchangeRateResponse> responseObserver) {
+        LOG.info("Getting current rate for currency: " + request.getCurrencyCode());
+
+        try {
+            int id = currencyRegistry.idOf(request.getCurrencyCode());
+            if (id < 0) {
+                throw new IllegalArgumentException("Unsupported currency: " + request.getCurrencyCode());
+            }
+            ExchangeRate grpcRate = calculateRate(id);
+
+            ExchangeRateResponse response = ExchangeRateResponse.newBuilder()
+                .setRate(grpcRate)
+                .build();
+
+            LOG.info("Returning exchange rate for " + request.getCurrencyCode() + ": " + grpcRate.getRate());
+
+            responseObserver.onNext(response);
+            responseObserver.onCompleted();
+
+        } catch (Exception e) {
+            LOG.error("Error getting current rate for " + request.getCurrencyCode(), e);
+            responseObserver.onError(e);
+        }
+    }
+
+    @Override
+    public void streamRates(Empty request, StreamObserver<ExchangeRateListResponse> responseObserver) {
+        LOG.info("Subscribing to the exchange rate stream");
+
+        if (responseObserver instanceof ServerCallStreamObserver<ExchangeRateListResponse> serverObserver) {
+            serverObserver.setOnCancelHandler(() -> subscribers.remove(responseObserver));
+        }
+        subscribers.add(responseObserver);
+        responseObserver.onNext(allRates());
+    }
+
+    /**
+     * Pushes all the rates to every subscriber
+     */
+    void publish() {
+        for (StreamObserver<ExchangeRateListResponse> subscriber : subscribers) {
+            try {
+                subscriber.onNext(allRates());
+            } catch (Exception e) {
+                // Cancelled while publishing
+                subscribers.remove(subscriber);
+            }
+        }
+    }
+
+    private ExchangeRateListResponse allRates() {
+        ExchangeRateListResponse.Builder responseBuilder = ExchangeRateListResponse.newBuilder();
+        for (int id = 0; id < currencyRegistry.size(); id++) {
+            responseBuilder.addRates(calculateRate(id));
+        }
+        return responseBuilder.build();
+    }
+
+    private ExchangeRate calculateRate(int id) {
+        long currentTime = System.currentTimeMillis() / 1_000; // Convert to seconds
+        double fluctuation = Math.sin(currentTime + currencyRegistry.seed(id)) * fluctuationFactor;
+
+        BigDecimal rate = currencyRegistry.baseRate(id).toBigDecimal().add(BigDecimal.valueOf(fluctuation))
+            .setScale(currencyRegistry.scale(id), RoundingMode.HALF_UP);
+
+        return ExchangeRate.newBuilder()
+            .setCurrencyCode(currencyRegistry.code(id))
+            .setRate(rate.doubleValue())
+            .setTimestamp(LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
+            .build();
+    }
+}
@@ -0,0 +1,73 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SuppressWarnings("deprecation") // Checks the string timestamp too
+class CrossRateMatrixTest {
+
+    private static final String[] CURRENCIES = {"USD", "EUR", "GBP", "JPY"};
+    private static final Instant TIMESTAMP = Instant.parse("2024-01-15T10:30:15.123Z");
+
+    @Test
+    void shouldComputeCrossRates() {
+        CrossRateMatrix matrix = CrossRateMatrix.build(null, CURRENCIES, new double[]{1, 0.92, 0.79, 149.25}, TIMESTAMP, true);
+
+        assertEquals(4, matrix.size());
+        int usd = matrix.indexOf("USD");
+        int eur = matrix.indexOf("EUR");
+        int jpy = matrix.indexOf("JPY");
+        assertEquals(-1, matrix.indexOf("INVALID"));
+
+        assertEquals(0.92, matrix.rate(usd, eur), 1e-12);
+        assertEquals(1 / 0.92, matrix.rate(eur, usd), 1e-12);
+        assertEquals(149.25 / 0.92, matrix.rate(eur, jpy), 1e-12);
+        for (int i = 0; i < matrix.size(); i++) {
+            assertEquals(1, matrix.rate(i, i), 1e-12);
+        }
+    }
+
+    @Test
+    void incrementalUpdateShouldMatchFullBuild() {
+        CrossRateMatrix previous = CrossRateMatrix.build(null, CURRENCIES, new double[]{1, 0.92, 0.79, 149.25}, TIMESTAMP, true);
+        double[] usdRates = {1, 0.93, 0.79, 148.10};
+
+        CrossRateMatrix incremental = CrossRateMatrix.build(previous, CURRENCIES, usdRates, TIMESTAMP, true);
+        CrossRateMatrix full = CrossRateMatrix.build(null, CURRENCIES, usdRates, TIMESTAMP, true);
+
+        for (int from = 0; from < full.size(); from++) {
+            for (int to = 0; to < full.size(); to++) {
+                assertEquals(full.rate(from, to), incremental.rate(from, to));
+            }
+        }
+        // The previous matrix is immutable
+        assertEquals(0.92, previous.rate(0, 1), 1e-12);
+    }
+
+    @Test
+    void shouldConvertToGrpcResponse() {
+        CrossRateMatrix matrix = CrossRateMatrix.build(null, CURRENCIES, new double[]{1, 0.92, 0.79, 149.25}, TIMESTAMP, true);
+
+        CrossRateMatrixResponse response = matrix.toGrpcResponse();
+
+        assertEquals(4, response.getCurrencyCodesCount());
+        assertEquals(16, response.getRatesCount());
+        assertEquals(TIMESTAMP.toEpochMilli(), response.getEpochMillis());
+        assertEquals(ExchangeRateEngine.formatTimestamp(TIMESTAMP), response.getTimestamp());
+        assertEquals(matrix.rate(1, 3), response.getRates(1 * 4 + 3));
+        assertSame(response, matrix.toGrpcResponse());
+    }
+
+    @Test
+    void shouldOnlySendTheEpochMillisWithoutTheStringTimestamp() {
+        CrossRateMatrix matrix = CrossRateMatrix.build(null, CURRENCIES, new double[]{1, 0.92, 0.79, 149.25}, TIMESTAMP, false);
+
+        CrossRateMatrixResponse response = matrix.toGrpcResponse();
+
+        assertEquals(TIMESTAMP.toEpochMilli(), response.getEpochMillis());
+        assertTrue(response.getTimestamp().isEmpty());
+    }
+}
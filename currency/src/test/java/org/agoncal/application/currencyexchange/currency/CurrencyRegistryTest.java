@@ -0,0 +1,91 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CurrencyRegistryTest {
+
+    @Test
+    void shouldLoadTheDefaultCurrencies() {
+        CurrencyRegistry registry = new CurrencyRegistry();
+        registry.currenciesFile = Optional.empty();
+        registry.init();
+
+        assertEquals(6, registry.size());
+        assertEquals("AUD", registry.code(0));
+        assertEquals("JPY", registry.code(5));
+        assertEquals(FixedPoint.of(9217, 4), registry.baseRate(registry.idOf("EUR")));
+        assertEquals(2, registry.scale(registry.idOf("JPY")));
+        assertEquals(-1, registry.idOf("INVALID"));
+    }
+
+    @Test
+    void shouldLoadTheIso4217CurrenciesFromTheClasspath() {
+        CurrencyRegistry registry = new CurrencyRegistry();
+        registry.currenciesFile = Optional.of("currencies-iso4217.csv");
+        registry.init();
+
+        assertTrue(registry.size() >= 150);
+        // The currencies of currencies.csv keep their rates, and a day of history and 10000 candles
+        assertEquals(FixedPoint.of(9217, 4), registry.baseRate(registry.idOf("EUR")));
+        assertEquals(4000, registry.seed(registry.idOf("EUR")));
+        assertEquals(86_400, registry.historyCapacity(registry.idOf("EUR"), 3_600));
+        assertEquals(10_000, registry.candleCapacity(registry.idOf("EUR"), 1_000));
+        // The others the configured capacities
+        assertEquals(3_600, registry.historyCapacity(registry.idOf("INR"), 3_600));
+        assertEquals(1_000, registry.candleCapacity(registry.idOf("INR"), 1_000));
+    }
+
+    @Test
+    void shouldReadTheOptionalCapacities() throws IOException {
+        CurrencyRegistry registry = new CurrencyRegistry();
+        registry.load(new StringReader("""
+            code,base_rate,scale,seed,history_capacity,candle_capacity
+            EUR,0.9217,4,4000,86400,10000
+            GBP,0.7905,4,5000,,500
+            JPY,149.25,2,6000,7200
+            USD,1,4,7000
+            """));
+
+        assertEquals(86_400, registry.historyCapacity(registry.idOf("EUR"), 3_600));
+        assertEquals(10_000, registry.candleCapacity(registry.idOf("EUR"), 1_000));
+        assertEquals(3_600, registry.historyCapacity(registry.idOf("GBP"), 3_600));
+        assertEquals(500, registry.candleCapacity(registry.idOf("GBP"), 1_000));
+        assertEquals(7_200, registry.historyCapacity(registry.idOf("JPY"), 3_600));
+        assertEquals(1_000, registry.candleCapacity(registry.idOf("JPY"), 1_000));
+        assertEquals(3_600, registry.historyCapacity(registry.idOf("USD"), 3_600));
+    }
+
+    @Test
+    void shouldAssignDenseIdsInAlphabeticalOrder() throws IOException {
+        StringBuilder csv = new StringBuilder("code,base_rate,scale,seed\n");
+        for (int i = 199; i >= 0; i--) {
+            csv.append(String.format("C%03d,%d.5,4,%d%n", i, i + 1, i * 1000));
+        }
+        CurrencyRegistry registry = new CurrencyRegistry();
+        registry.load(new StringReader(csv.toString()));
+
+        assertEquals(200, registry.size());
+        for (int id = 0; id < registry.size(); id++) {
+            assertEquals(String.format("C%03d", id), registry.code(id));
+            assertEquals(id, registry.idOf(registry.code(id)));
+            assertEquals(id * 1000L, registry.seed(id));
+        }
+    }
+
+    @Test
+    void shouldRejectInvalidLines() {
+        CurrencyRegistry registry = new CurrencyRegistry();
+
+        assertThrows(IllegalArgumentException.class, () -> registry.load(new StringReader("EUR,0.92,4")));
+        assertThrows(IllegalArgumentException.class, () -> registry.load(new StringReader("EUR,0.92,6,1")));
+        assertThrows(IllegalArgumentException.class, () -> registry.load(new StringReader("EUR,0.92,4,1\nEUR,0.93,4,2")));
+        assertThrows(IllegalArgumentException.class, () -> registry.load(new StringReader("EUR,0.92,4,1,0")));
+        assertThrows(IllegalArgumentException.class, () -> registry.load(new StringReader("EUR,0.92,4,1,10,10,10")));
+    }
+}
@@ -0,0 +1,46 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@QuarkusTest
+class ExchangeRateEngineTest {
+
+    @Inject
+    ExchangeRateEngine engine;
+
+    @Inject
+    CurrencyRegistry currencyRegistry;
+
+    @Test
+    void shouldComputeAllSupportedCurrencies() {
+        RateSnapshot snapshot = engine.current();
+
+        assertEquals(currencyRegistry.size(), snapshot.rates().size());
+        for (int id = 0; id < currencyRegistry.size(); id++) {
+            String currencyCode = currencyRegistry.code(id);
+            ExchangeRateData rate = snapshot.rate(currencyCode);
+            assertNotNull(rate, "Missing rate for " + currencyCode);
+            assertEquals(snapshot.timestamp(), rate.timestamp());
+        }
+        assertEquals(2, snapshot.rate("JPY").rate().scale());
+        assertEquals(4, snapshot.rate("EUR").rate().scale());
+        assertNull(snapshot.rate("INVALID"));
+    }
+
+    @Test
+    void shouldServeTheSameSnapshotWithinATick() {
+        RateSnapshot first = engine.current();
+        RateSnapshot second = engine.current();
+
+        // Either the same tick, and so the same instance, or the next one
+        if (first.tick() == second.tick()) {
+            assertSame(first, second);
+        } else {
+            assertTrue(second.tick() > first.tick());
+        }
+    }
+}
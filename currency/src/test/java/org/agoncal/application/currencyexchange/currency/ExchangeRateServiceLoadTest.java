@@ -0,0 +1,173 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import io.grpc.ManagedChannel;
+import io.quarkus.grpc.GrpcClient;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.subscription.Cancellable;
+import io.vertx.core.Vertx;
+import io.vertx.grpc.VertxChannelBuilder;
+import io.vertx.grpc.VertxServer;
+import io.vertx.grpc.VertxServerBuilder;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * p99 latency of GetCurrentRate bursts, without streams then with 10k StreamRates subscribers, for the Mutiny service
+ * and for the classic StreamObserver one it replaced ({@link ClassicExchangeRateService}, on its own server of the same Vert.x).
+ * Both serve their calls on the event loop. With the streams, the p99 of the Mutiny service must not be above the one of
+ * the classic service (with {@link #MAX_EXTRA_MILLIS} more, for a p99 too small to compare).
+ * Takes a while and a lot of file descriptors, so only runs with {@code mvn test -Dperformance-tests=true -Dtest=ExchangeRateServiceLoadTest}.
+ */
+@QuarkusTest
+@TestProfile(ExchangeRateServiceLoadTest.LoadTestProfile.class)
+@EnabledIfSystemProperty(named = "performance-tests", matches = "true")
+class ExchangeRateServiceLoadTest {
+
+    private static final int STREAMS = 10_000;
+    private static final int CALLS = 5_000;
+    private static final double MAX_EXTRA_MILLIS = 20;
+    private static final long STREAM_INTERVAL_MILLIS = 100;
+
+    private static final Logger LOG = Logger.getLogger(ExchangeRateServiceLoadTest.class);
+
+    @GrpcClient
+    ExchangeRateService exchangeRateService;
+
+    @Inject
+    Vertx vertx;
+
+    @Inject
+    CurrencyRegistry currencyRegistry;
+
+    @ConfigProperty(name = "exchange-rates.fluctuation-factor")
+    double fluctuationFactor;
+
+    public static class LoadTestProfile implements QuarkusTestProfile {
+
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of(
+                "quarkus.http.limits.max-concurrent-streams", String.valueOf(STREAMS * 2),
+                "quarkus.log.category.\"org.agoncal.application.currencyexchange\".level", "INFO",
+                // The classic service still builds its INFO messages, but they are not written: two lines per call would flood the output
+                "quarkus.log.category.\"" + ClassicExchangeRateService.class.getName() + "\".level", "WARN",
+                "exchange-rates.stream.interval", STREAM_INTERVAL_MILLIS + "ms"
+            );
+        }
+    }
+
+    private record Latencies(double withoutStreams, double withStreams) {
+    }
+
+    @Test
+    void shouldKeepTheUnaryLatencyUnderTenThousandStreams() throws Exception {
+        Latencies mutiny = measure("Mutiny", exchangeRateService::getCurrentRate, () -> exchangeRateService.streamRates(Empty.getDefaultInstance()));
+
+        ClassicExchangeRateService classicService = new ClassicExchangeRateService(currencyRegistry, fluctuationFactor);
+        // Calls run on the Vert.x event loop of the server, as the ones of the Mutiny service
+        VertxServerBuilder serverBuilder = VertxServerBuilder.forAddress(vertx, "localhost", 0)
+            .addService(classicService);
+        serverBuilder.nettyBuilder().maxConcurrentCallsPerConnection(STREAMS * 2);
+        VertxServer server = serverBuilder.build();
+        CompletableFuture<Void> started = new CompletableFuture<>();
+        server.start(result -> {
+            if (result.succeeded()) {
+                started.complete(null);
+            } else {
+                started.completeExceptionally(result.cause());
+            }
+        });
+        started.get(10, TimeUnit.SECONDS);
+        ManagedChannel channel = VertxChannelBuilder.forAddress(vertx, "localhost", server.getPort()).usePlaintext().build();
+        ScheduledExecutorService publisher = Executors.newSingleThreadScheduledExecutor();
+        Latencies classic;
+        try {
+            publisher.scheduleAtFixedRate(classicService::publish, STREAM_INTERVAL_MILLIS, STREAM_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            MutinyExchangeRateServiceGrpc.MutinyExchangeRateServiceStub classicClient = MutinyExchangeRateServiceGrpc.newMutinyStub(channel);
+            classic = measure("classic", classicClient::getCurrentRate, () -> classicClient.streamRates(Empty.getDefaultInstance()));
+        } finally {
+            publisher.shutdownNow();
+            channel.shutdown().awaitTermination(10, TimeUnit.SECONDS);
+            server.shutdown();
+        }
+
+        assertTrue(mutiny.withStreams() <= classic.withStreams() + MAX_EXTRA_MILLIS,
+            String.format("p99 of %.2f ms with streams, %.2f ms for the classic service", mutiny.withStreams(), classic.withStreams()));
+    }
+
+    private Latencies measure(String implementation, Function<CurrencyRequest, Uni<ExchangeRateResponse>> getCurrentRate,
+                              Supplier<Multi<ExchangeRateListResponse>> streamRates) throws InterruptedException {
+        // Warm up
+        p99Millis(getCurrentRate, CALLS);
+        double withoutStreams = p99Millis(getCurrentRate, CALLS);
+
+        LongAdder messages = new LongAdder();
+        List<Cancellable> streams = new ArrayList<>();
+        try {
+            for (int i = 0; i < STREAMS; i++) {
+                streams.add(streamRates.get().subscribe().with(response -> messages.increment(), failure -> fail(failure)));
+            }
+            // Every stream got its first message
+            long deadline = System.currentTimeMillis() + 60_000;
+            while (messages.sum() < STREAMS) {
+                assertTrue(System.currentTimeMillis() < deadline, "Only " + messages.sum() + " " + implementation + " streams started");
+                Thread.sleep(100);
+            }
+
+            // Warm up, with the streams
+            p99Millis(getCurrentRate, CALLS);
+            double withStreams = p99Millis(getCurrentRate, CALLS);
+            LOG.infof("%s GetCurrentRate p99: %.2f ms without streams, %.2f ms with %d streams (%d stream messages)",
+                implementation, withoutStreams, withStreams, STREAMS, messages.sum());
+            assertTrue(Double.isFinite(withStreams), implementation + " calls failed under load");
+            return new Latencies(withoutStreams, withStreams);
+        } finally {
+            streams.forEach(Cancellable::cancel);
+        }
+    }
+
+    private double p99Millis(Function<CurrencyRequest, Uni<ExchangeRateResponse>> getCurrentRate, int calls) throws InterruptedException {
+        long[] latencies = new long[calls];
+        CountDownLatch done = new CountDownLatch(calls);
+        CurrencyRequest request = CurrencyRequest.newBuilder().setCurrencyCode("EUR").build();
+        for (int i = 0; i < calls; i++) {
+            int call = i;
+            long start = System.nanoTime();
+            getCurrentRate.apply(request).subscribe().with(
+                response -> {
+                    latencies[call] = System.nanoTime() - start;
+                    done.countDown();
+                },
+                failure -> {
+                    latencies[call] = Long.MAX_VALUE;
+                    done.countDown();
+                });
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS), "Calls not answered");
+        Arrays.sort(latencies);
+        long p99 = latencies[(int) Math.ceil(calls * 0.99) - 1];
+        return p99 == Long.MAX_VALUE ? Double.POSITIVE_INFINITY : p99 / 1e6;
+    }
+}
@@ -4,11 +4,15 @@ import io.quarkus.grpc.GrpcClient;
 import io.quarkus.test.junit.QuarkusTest;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+// Also checks the deprecated string timestamp, sent by default to the clients that do not read epoch_millis
+@SuppressWarnings("deprecation")
 @QuarkusTest
 class ExchangeRateServiceTest {
 
@@ -17,7 +21,7 @@ class ExchangeRateServiceTest {
 
     @Test
     void testGetAllCurrentRates() throws Exception {
-        Empty request = Empty.newBuilder().build();
+        AllRatesRequest request = AllRatesRequest.newBuilder().build();
 
         CompletableFuture<ExchangeRateListResponse> message = new CompletableFuture<>();
         exchangeRateService.getAllCurrentRates(request).subscribe().with(
@@ -51,6 +55,7 @@ class ExchangeRateServiceTest {
             assertFalse(rate.getCurrencyCode().isEmpty());
             assertTrue(rate.getRate() > 0);
             assertNotNull(rate.getTimestamp());
+            assertTrue(rate.getEpochMillis() > 0);
         }
     }
 
@@ -117,6 +122,178 @@ class ExchangeRateServiceTest {
         ExchangeRate rate = response.getRate();
         assertEquals("JPY", rate.getCurrencyCode());
         assertTrue(rate.getRate() > 0);
+        assertEquals(2, rate.getRateScale());
+        assertEquals(rate.getRate(), FixedPoint.toDouble(rate.getRateMantissa(), rate.getRateScale()));
         assertNotNull(rate.getTimestamp());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGetAllCurrentRatesChangedSinceVersion() {
+        ExchangeRateListResponse all = exchangeRateService.getAllCurrentRates(AllRatesRequest.getDefaultInstance())
+                .await().atMost(Duration.ofSeconds(5));
+        assertTrue(all.getVersion() > 0);
+        assertFalse(all.getDelta());
+
+        // Nothing changed since the version the client has, unless a tick went by in between (see RateSnapshotTest)
+        ExchangeRateListResponse same = exchangeRateService.getAllCurrentRates(
+                AllRatesRequest.newBuilder().setIfVersionAfter(all.getVersion()).build())
+                .await().atMost(Duration.ofSeconds(5));
+        assertTrue(same.getNotModified() || same.getVersion() > all.getVersion());
+
+        // Only the rates changed since an older version
+        ExchangeRateListResponse delta = exchangeRateService.getAllCurrentRates(
+                AllRatesRequest.newBuilder().setIfVersionAfter(all.getVersion() - 1).build())
+                .await().atMost(Duration.ofSeconds(5));
+        assertTrue(delta.getDelta());
+        assertTrue(delta.getRatesCount() <= 6);
+    }
+
+    @Test
+    void testStreamRates() {
+        Empty request = Empty.newBuilder().build();
+
+        // All the current rates are pushed on subscription, then the ones that changed
+        List<ExchangeRateListResponse> responses = exchangeRateService.streamRates(request)
+                .select().first(2)
+                .collect().asList()
+                .await().atMost(Duration.ofSeconds(5));
+
+        assertEquals(2, responses.size());
+        assertFalse(responses.get(0).getDelta());
+        assertEquals(6, responses.get(0).getRatesCount());
+        assertTrue(responses.get(1).getDelta());
+        assertTrue(responses.get(1).getVersion() > responses.get(0).getVersion());
+        for (ExchangeRateListResponse response : responses) {
+            for (ExchangeRate rate : response.getRatesList()) {
+                assertFalse(rate.getCurrencyCode().isEmpty());
+                assertTrue(rate.getRate() > 0);
+            }
+        }
+    }
+
+    @Test
+    void testGetRates() throws Exception {
+        CurrencyListRequest request = CurrencyListRequest.newBuilder()
+                .addCurrencyCodes("EUR")
+                .addCurrencyCodes("INVALID")
+                .addCurrencyCodes("JPY")
+                .build();
+
+        CompletableFuture<RateResultListResponse> message = new CompletableFuture<>();
+        exchangeRateService.getRates(request).subscribe().with(
+                reply -> message.complete(reply)
+        );
+
+        RateResultListResponse response = message.get(5, TimeUnit.SECONDS);
+
+        // One result per requested currency, in the request order
+        assertEquals(3, response.getResultsCount());
+
+        RateResult eur = response.getResults(0);
+        assertEquals("EUR", eur.getCurrencyCode());
+        assertTrue(eur.hasRate());
+        assertEquals("EUR", eur.getRate().getCurrencyCode());
+        assertTrue(eur.getRate().getRate() > 0);
+
+        RateResult invalid = response.getResults(1);
+        assertEquals("INVALID", invalid.getCurrencyCode());
+        assertFalse(invalid.hasRate());
+        assertFalse(invalid.getError().isEmpty());
+
+        RateResult jpy = response.getResults(2);
+        assertEquals("JPY", jpy.getCurrencyCode());
+        assertTrue(jpy.hasRate());
+        assertTrue(jpy.getRate().getRate() > 0);
+    }
+
+    @Test
+    void testGetCrossRate() throws Exception {
+        CrossRateRequest request = CrossRateRequest.newBuilder()
+                .setFromCurrencyCode("EUR")
+                .setToCurrencyCode("JPY")
+                .build();
+
+        CompletableFuture<CrossRateResponse> message = new CompletableFuture<>();
+        exchangeRateService.getCrossRate(request).subscribe().with(
+                reply -> message.complete(reply)
+        );
+
+        CrossRateResponse response = message.get(5, TimeUnit.SECONDS);
+
+        assertEquals("EUR", response.getFromCurrencyCode());
+        assertEquals("JPY", response.getToCurrencyCode());
+        assertTrue(response.getRate() > 100); // 1 EUR is worth more than 100 JPY
+        assertTrue(response.getEpochMillis() > 0);
+        assertFalse(response.getTimestamp().isEmpty());
+    }
+
+    @Test
+    void testGetCrossRateMatrix() throws Exception {
+        CompletableFuture<CrossRateMatrixResponse> message = new CompletableFuture<>();
+        exchangeRateService.getCrossRateMatrix(Empty.newBuilder().build()).subscribe().with(
+                reply -> message.complete(reply)
+        );
+
+        CrossRateMatrixResponse response = message.get(5, TimeUnit.SECONDS);
+
+        // The 6 supported currencies plus USD
+        int size = response.getCurrencyCodesCount();
+        assertEquals(7, size);
+        assertEquals("USD", response.getCurrencyCodes(0));
+        assertEquals(size * size, response.getRatesCount());
+        assertTrue(response.getEpochMillis() > 0);
+        for (int i = 0; i < size; i++) {
+            assertEquals(1, response.getRates(i * size + i), 1e-9);
+        }
+    }
+
+    @Test
+    void testGetRateHistory() throws Exception {
+        // Makes sure the current tick is recorded
+        testGetCurrentRateEUR();
+
+        RateHistoryRequest request = RateHistoryRequest.newBuilder()
+                .setCurrencyCode("EUR")
+                .build();
+
+        List<ExchangeRate> rates = exchangeRateService.getRateHistory(request)
+                .collect().asList()
+                .await().atMost(Duration.ofSeconds(5));
+
+        assertFalse(rates.isEmpty());
+        for (ExchangeRate rate : rates) {
+            assertEquals("EUR", rate.getCurrencyCode());
+            assertTrue(rate.getRate() > 0);
+            assertFalse(rate.getTimestamp().isEmpty());
+            assertEquals(0, rate.getEpochMillis() % 1_000);
+        }
+    }
+
+    @Test
+    void testGetCandles() throws Exception {
+        // Makes sure the current tick is recorded
+        testGetCurrentRateEUR();
+
+        CandleRequest request = CandleRequest.newBuilder()
+                .setCurrencyCode("EUR")
+                .setResolution(CandleResolution.ONE_MINUTE)
+                .setLimit(10)
+                .build();
+
+        CompletableFuture<CandleListResponse> message = new CompletableFuture<>();
+        exchangeRateService.getCandles(request).subscribe().with(
+                reply -> message.complete(reply)
+        );
+
+        CandleListResponse response = message.get(5, TimeUnit.SECONDS);
+
+        assertEquals("EUR", response.getCurrencyCode());
+        int size = response.getStartEpochSecondsCount();
+        assertTrue(size > 0 && size <= 10);
+        for (int i = 0; i < size; i++) {
+            assertEquals(0, response.getStartEpochSeconds(i) % 60);
+            assertTrue(response.getLow(i) <= response.getOpen(i) && response.getOpen(i) <= response.getHigh(i));
+            assertTrue(response.getLow(i) <= response.getClose(i) && response.getClose(i) <= response.getHigh(i));
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FixedPointTest {
+
+    @Test
+    void shouldConvertFromAndToBigDecimal() {
+        assertEquals(FixedPoint.of(9217, 4), FixedPoint.of(new BigDecimal("0.9217")));
+        assertEquals(FixedPoint.of(1000, 0), FixedPoint.of(new BigDecimal("1E+3")));
+        assertEquals(new BigDecimal("149.25"), FixedPoint.of(14925, 2).toBigDecimal());
+        assertEquals("0.9217", FixedPoint.of(9217, 4).toString());
+        assertEquals(0.9217, FixedPoint.of(9217, 4).toDouble());
+        assertThrows(ArithmeticException.class, () -> FixedPoint.of(new BigDecimal("123456789012345678901")));
+    }
+
+    @Test
+    void shouldRescaleLikeBigDecimalHalfUp() {
+        long[] mantissas = {1492549, 1492550, 1492551, -1492549, -1492550, -1492551, 0, 5, -5};
+        for (long mantissa : mantissas) {
+            for (int scale = 0; scale <= 6; scale++) {
+                BigDecimal expected = BigDecimal.valueOf(mantissa, 4).setScale(scale, RoundingMode.HALF_UP);
+                assertEquals(expected, FixedPoint.of(mantissa, 4).withScale(scale).toBigDecimal(), mantissa + " at scale " + scale);
+            }
+        }
+    }
+}
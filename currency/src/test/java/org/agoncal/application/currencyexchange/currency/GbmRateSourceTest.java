@@ -0,0 +1,156 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GbmRateSourceTest {
+
+    private static final Logger LOG = Logger.getLogger(GbmRateSourceTest.class);
+
+    @Test
+    void shouldGenerateTheSameRatesWithTheSameSeed() {
+        GbmRateSource source = source(Optional.empty());
+        GbmRateSource other = source(Optional.empty());
+        long[] rates = new long[6];
+        long[] otherRates = new long[6];
+
+        source.rates(1_000, rates);
+        other.rates(1_000, otherRates);
+        assertEquals(9217, rates[3]); // EUR starts at its base rate
+
+        for (long tick = 1_001; tick < 2_000; tick++) {
+            source.rates(tick, rates);
+            other.rates(tick, otherRates);
+            assertArrayEquals(rates, otherRates);
+        }
+        // And a long jump in one go
+        source.rates(1_000_000, rates);
+        assertTrue(rates[3] > 0);
+    }
+
+    @Test
+    void shouldFollowTheCovarianceMatrix() {
+        // EUR and CHF strongly correlated, JPY independent
+        List<Double> covariance = new ArrayList<>();
+        double[] volatilities = {0.001, 0.001, 0.002, 0.002, 0.001, 0.003};
+        for (int i = 0; i < 6; i++) {
+            for (int j = 0; j < 6; j++) {
+                double correlation = i == j ? 1 : (i == 2 && j == 3) || (i == 3 && j == 2) ? 0.9 : 0;
+                covariance.add(correlation * volatilities[i] * volatilities[j]);
+            }
+        }
+        GbmRateSource source = source(Optional.of(covariance));
+
+        int steps = 200_000;
+        double[] logReturns = new double[steps * 6];
+        source.generate(logReturns, steps);
+
+        assertEquals(0.9, correlation(logReturns, steps, 2, 3), 0.01);
+        assertEquals(0, correlation(logReturns, steps, 3, 5), 0.01);
+        assertEquals(0.002, Math.sqrt(covariance(logReturns, steps, 3, 3)), 0.0001);
+    }
+
+    @Test
+    void shouldRejectAnInvalidCovarianceMatrix() {
+        List<Double> notPositive = new ArrayList<>();
+        for (int i = 0; i < 36; i++) {
+            notPositive.add(-1.0);
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> source(Optional.of(notPositive)));
+        assertThrows(IllegalArgumentException.class, () -> source(Optional.of(List.of(1.0, 0.0))));
+    }
+
+    @Test
+    void shouldStepThroughTheTicksSkippedByTheClock() {
+        Instant start = Instant.parse("2024-01-01T00:00:00Z");
+        SimulatedClock clock = new SimulatedClock(start, 0);
+        ExchangeRateEngine engine = TestEngines.engine(clock, 100, currencyRegistry -> source(Optional.empty(), currencyRegistry));
+
+        clock.advance(Duration.ofSeconds(10));
+        engine.tick();
+
+        // The same rates as a source asked for every tick, not a flat run of the last one
+        GbmRateSource everyTick = source(Optional.empty());
+        long[] rates = new long[6];
+        RateHistory.Samples samples = engine.rateHistory.query("EUR", 0, Long.MAX_VALUE - 1);
+        assertEquals(11, samples.size());
+        Set<Long> distinct = new HashSet<>();
+        for (int i = 0; i < samples.size(); i++) {
+            everyTick.rates(start.getEpochSecond() + i, rates);
+            assertEquals(start.getEpochSecond() + i, samples.epochSeconds()[i]);
+            assertEquals(rates[3], samples.scaledRates()[i], "tick " + i);
+            distinct.add(samples.scaledRates()[i]);
+        }
+        assertTrue(distinct.size() > 5);
+        assertEquals(rates[3], engine.current().rate("EUR").rate().scaledTo(RateHistory.SCALE));
+    }
+
+    /**
+     * Timing depends on the machine, so only runs with {@code mvn test -Dperformance-tests=true -Dtest=GbmRateSourceTest}.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "performance-tests", matches = "true")
+    void shouldGenerateMillionsOfTicksPerSecond() {
+        GbmRateSource source = source(Optional.empty());
+        long[] rates = new long[6];
+        int ticks = 2_000_000;
+
+        long start = System.nanoTime();
+        for (int tick = 1; tick <= ticks; tick++) {
+            source.rates(tick, rates);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        double millionsPerSecond = ticks * 6 / seconds / 1e6;
+        LOG.infof("GBM rate source: %.1f million currency ticks per second", millionsPerSecond);
+        assertTrue(millionsPerSecond > 1, String.format("Only %.2f million currency ticks per second", millionsPerSecond));
+    }
+
+    private static GbmRateSource source(Optional<List<Double>> covariance) {
+        return source(covariance, TestEngines.currencyRegistry());
+    }
+
+    private static GbmRateSource source(Optional<List<Double>> covariance, CurrencyRegistry currencyRegistry) {
+        GbmRateSource source = new GbmRateSource();
+        source.drift = 0;
+        source.volatility = 0.0005;
+        source.correlation = 0.3;
+        source.covariance = covariance;
+        source.seed = 42;
+        source.currencyRegistry = currencyRegistry;
+        source.init();
+        return source;
+    }
+
+    private static double covariance(double[] logReturns, int steps, int i, int j) {
+        double meanI = 0;
+        double meanJ = 0;
+        for (int step = 0; step < steps; step++) {
+            meanI += logReturns[step * 6 + i];
+            meanJ += logReturns[step * 6 + j];
+        }
+        meanI /= steps;
+        meanJ /= steps;
+        double sum = 0;
+        for (int step = 0; step < steps; step++) {
+            sum += (logReturns[step * 6 + i] - meanI) * (logReturns[step * 6 + j] - meanJ);
+        }
+        return sum / (steps - 1);
+    }
+
+    private static double correlation(double[] logReturns, int steps, int i, int j) {
+        return covariance(logReturns, steps, i, j) / Math.sqrt(covariance(logReturns, steps, i, i) * covariance(logReturns, steps, j, j));
+    }
+}
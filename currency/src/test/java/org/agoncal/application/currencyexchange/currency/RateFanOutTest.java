@@ -0,0 +1,162 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateFanOutTest {
+
+    @Test
+    void shouldSendTheChangedRatesToReadySubscribers() {
+        SimulatedClock clock = new SimulatedClock(Instant.parse("2024-01-01T00:00:00Z"), 0);
+        ExchangeRateEngine engine = TestEngines.engine(clock);
+        RateFanOut fanOut = new RateFanOut();
+        TestObserver subscriber = new TestObserver(true);
+        TestObserver other = new TestObserver(true);
+
+        fanOut.subscribe(subscriber, engine.current());
+        fanOut.subscribe(other, engine.current());
+        clock.advance(Duration.ofSeconds(1));
+        engine.tick();
+        RateSnapshot next = engine.current();
+        fanOut.publish(next);
+        // Nothing changed, nothing sent
+        fanOut.publish(next);
+
+        assertEquals(2, subscriber.messages.size());
+        assertFalse(subscriber.messages.get(0).getDelta());
+        assertEquals(6, subscriber.messages.get(0).getRatesCount());
+        assertTrue(subscriber.messages.get(1).getDelta());
+        assertEquals(next.version(), subscriber.messages.get(1).getVersion());
+        // Up to date subscribers share the same delta
+        assertSame(subscriber.messages.get(1), other.messages.get(1));
+    }
+
+    @Test
+    void shouldSendAllTheRatesFirstWhateverThePublications() {
+        SimulatedClock clock = new SimulatedClock(Instant.parse("2024-01-01T00:00:00Z"), 0);
+        ExchangeRateEngine engine = TestEngines.engine(clock);
+        RateFanOut fanOut = new RateFanOut();
+        RateSnapshot subscribed = engine.current();
+        clock.advance(Duration.ofSeconds(1));
+        engine.tick();
+        RateSnapshot next = engine.current();
+        TestObserver notReady = new TestObserver(false);
+        fanOut.subscribe(notReady, subscribed);
+
+        // A delta published before the first message is sent
+        fanOut.publish(next);
+        // A subscription with a snapshot older than the last publication
+        TestObserver late = new TestObserver(true);
+        fanOut.subscribe(late, subscribed);
+        notReady.ready = true;
+        notReady.onReadyHandler.run();
+
+        assertEquals(1, notReady.messages.size());
+        assertFalse(notReady.messages.get(0).getDelta());
+        assertEquals(6, notReady.messages.get(0).getRatesCount());
+        assertEquals(next.version(), notReady.messages.get(0).getVersion());
+        for (ExchangeRateListResponse message : late.messages) {
+            assertFalse(message.getDelta());
+            assertEquals(6, message.getRatesCount());
+        }
+        assertEquals(next.version(), late.messages.get(late.messages.size() - 1).getVersion());
+    }
+
+    @Test
+    void shouldConflateTheRatesOfASlowSubscriber() {
+        SimulatedClock clock = new SimulatedClock(Instant.parse("2024-01-01T00:00:00Z"), 0);
+        ExchangeRateEngine engine = TestEngines.engine(clock);
+        RateFanOut fanOut = new RateFanOut();
+        TestObserver slow = new TestObserver(false);
+
+        fanOut.subscribe(slow, engine.current());
+        RateSnapshot last = null;
+        for (int tick = 0; tick < 1_000; tick++) {
+            clock.advance(Duration.ofSeconds(1));
+            engine.tick();
+            last = engine.current();
+            fanOut.publish(last);
+        }
+        assertEquals(0, slow.messages.size());
+
+        slow.ready = true;
+        slow.onReadyHandler.run();
+
+        // A single message with the latest rate of each currency
+        assertEquals(1, slow.messages.size());
+        ExchangeRateListResponse message = slow.messages.get(0);
+        assertFalse(message.getDelta());
+        assertEquals(last.version(), message.getVersion());
+        assertEquals(6, message.getRatesCount());
+        for (int id = 0; id < 6; id++) {
+            assertEquals(last.grpcRates().get(id).getRateMantissa(), message.getRates(id).getRateMantissa());
+        }
+    }
+
+
+    private static final class TestObserver extends ServerCallStreamObserver<ExchangeRateListResponse> {
+
+        final List<ExchangeRateListResponse> messages = new ArrayList<>();
+        boolean ready;
+        Runnable onReadyHandler;
+
+        TestObserver(boolean ready) {
+            this.ready = ready;
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void setOnReadyHandler(Runnable onReadyHandler) {
+            this.onReadyHandler = onReadyHandler;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public void setOnCancelHandler(Runnable onCancelHandler) {
+        }
+
+        @Override
+        public void setCompression(String compression) {
+        }
+
+        @Override
+        public void disableAutoInboundFlowControl() {
+        }
+
+        @Override
+        public void request(int count) {
+        }
+
+        @Override
+        public void setMessageCompression(boolean enable) {
+        }
+
+        @Override
+        public void onNext(ExchangeRateListResponse value) {
+            messages.add(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+}
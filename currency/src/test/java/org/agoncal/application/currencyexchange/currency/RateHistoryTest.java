@@ -0,0 +1,80 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateHistoryTest {
+
+    private CurrencyRegistry currencyRegistry;
+    private RateHistory history;
+
+    @BeforeEach
+    void setUp() {
+        currencyRegistry = new CurrencyRegistry();
+        currencyRegistry.currenciesFile = Optional.empty();
+        currencyRegistry.init();
+        history = new RateHistory();
+        history.currencyRegistry = currencyRegistry;
+        history.capacity = 10;
+        history.init();
+    }
+
+    @Test
+    void shouldQueryATimeRange() {
+        for (long second = 100; second < 105; second++) {
+            history.record(currencyRegistry.idOf("EUR"), second, 9_200 + second);
+        }
+
+        RateHistory.Samples samples = history.query("EUR", 101, 103);
+
+        assertEquals(3, samples.size());
+        assertEquals(101, samples.epochSeconds()[0]);
+        assertEquals(103, samples.epochSeconds()[2]);
+        assertEquals(9_301, samples.scaledRates()[0]);
+        assertEquals(0, history.query("GBP", 0, Long.MAX_VALUE - 1).size());
+        assertEquals(0, history.query("EUR", 200, 300).size());
+    }
+
+    @Test
+    void shouldOnlyKeepTheLatestSamples() {
+        for (long second = 0; second < 25; second++) {
+            history.record(currencyRegistry.idOf("EUR"), second, second);
+        }
+
+        RateHistory.Samples samples = history.query("EUR", 0, Long.MAX_VALUE - 1);
+
+        // The capacity is 10, so the 15 first samples were overwritten
+        assertEquals(10, samples.size());
+        assertEquals(15, samples.epochSeconds()[0]);
+        assertEquals(24, samples.epochSeconds()[9]);
+    }
+
+    @Test
+    void shouldKeepTheCapacityOfTheCurrency() throws IOException {
+        currencyRegistry.load(new StringReader("""
+            EUR,0.9217,4,4000,20
+            GBP,0.7905,4,5000
+            """));
+        history.init();
+
+        for (long second = 0; second < 25; second++) {
+            history.record(currencyRegistry.idOf("EUR"), second, second);
+            history.record(currencyRegistry.idOf("GBP"), second, second);
+        }
+
+        assertEquals(20, history.query("EUR", 0, Long.MAX_VALUE - 1).size());
+        assertEquals(10, history.query("GBP", 0, Long.MAX_VALUE - 1).size());
+        assertEquals(20, history.maxCapacity());
+    }
+
+    @Test
+    void shouldRejectUnsupportedCurrency() {
+        assertThrows(IllegalArgumentException.class, () -> history.query("INVALID", 0, 10));
+    }
+}
@@ -0,0 +1,71 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateSnapshotTest {
+
+    private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+
+    @Test
+    void shouldAnswerWithTheRatesChangedSinceAVersion() {
+        SimulatedClock clock = new SimulatedClock(START, 0);
+        ExchangeRateEngine engine = TestEngines.engine(clock);
+        RateSnapshot first = engine.current();
+        clock.advance(Duration.ofSeconds(1));
+        engine.tick();
+        RateSnapshot second = engine.current();
+        assertEquals(START.getEpochSecond() + 1, second.version());
+
+        // Without a version, all the rates
+        assertSame(second.allRatesResponse(), second.ratesChangedSince(0));
+        assertSame(second.encodedAllRatesResponse(), second.encodedRatesChangedSince(0));
+
+        // The client is up to date
+        ExchangeRateListResponse same = second.ratesChangedSince(second.version());
+        assertTrue(same.getNotModified());
+        assertEquals(second.version(), same.getVersion());
+        assertEquals(0, same.getRatesCount());
+
+        // Only the rates changed since the client's version
+        ExchangeRateListResponse delta = second.ratesChangedSince(first.version());
+        assertTrue(delta.getDelta());
+        assertFalse(delta.getNotModified());
+        assertEquals(second.version(), delta.getVersion());
+        int changed = 0;
+        for (int id = 0; id < second.changedVersions().length; id++) {
+            if (second.changedVersions()[id] > first.version()) {
+                assertEquals(second.grpcRates().get(id), delta.getRates(changed++));
+            }
+        }
+        assertTrue(changed > 0);
+        assertEquals(changed, delta.getRatesCount());
+
+        // A version from the future, all the rates
+        assertSame(second.allRatesResponse(), second.ratesChangedSince(second.version() + 1));
+        assertFalse(second.ratesChangedSince(second.version() + 1).getDelta());
+    }
+
+    @Test
+    void shouldCountTheRequestsSharingASnapshot() {
+        SimulatedClock clock = new SimulatedClock(START, 0);
+        ExchangeRateEngine engine = TestEngines.engine(clock);
+        RateSnapshot first = engine.current();
+        for (int i = 0; i < 3; i++) {
+            assertSame(first, engine.serve());
+        }
+        clock.advance(Duration.ofSeconds(1));
+        engine.tick();
+        RateSnapshot second = engine.serve();
+
+        assertEquals(3, first.requests().sum());
+        assertEquals(1, second.requests().sum());
+        assertEquals(4, engine.requests());
+        assertEquals(2, engine.snapshots());
+        assertEquals(2.0, engine.requestsPerSnapshot());
+    }
+}
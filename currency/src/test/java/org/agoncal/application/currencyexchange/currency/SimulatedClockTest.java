@@ -0,0 +1,86 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimulatedClockTest {
+
+    private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+
+    @Test
+    void shouldOnlyMoveWhenAdvanced() {
+        SimulatedClock clock = new SimulatedClock(START, 0);
+        assertEquals(START, clock.instant());
+
+        clock.advance(Duration.ofHours(1));
+
+        assertEquals(START.plusSeconds(3_600), clock.instant());
+        assertEquals(START.plusSeconds(3_600), clock.withZone(ZoneOffset.UTC).instant());
+        assertThrows(IllegalArgumentException.class, () -> clock.advance(Duration.ofSeconds(-1)));
+    }
+
+    @Test
+    void shouldRunFasterThanRealTime() throws InterruptedException {
+        SimulatedClock clock = new SimulatedClock(START, 1_000);
+
+        Thread.sleep(50);
+
+        // At least 50 seconds in 50 milliseconds
+        assertTrue(clock.millis() - START.toEpochMilli() >= 50_000);
+    }
+
+    @Test
+    void shouldMoveSmoothlyWhenFasterThanRealTime() {
+        SimulatedClock clock = new SimulatedClock(START, 1_000);
+
+        // With a whole number of real milliseconds, the clock would only move by whole seconds
+        boolean belowTheSecond = false;
+        long deadline = System.nanoTime() + Duration.ofMillis(50).toNanos();
+        while (!belowTheSecond && System.nanoTime() < deadline) {
+            belowTheSecond = (clock.millis() - START.toEpochMilli()) % 1_000 != 0;
+        }
+        assertTrue(belowTheSecond);
+    }
+
+    @Test
+    void shouldReplayTheSameRatesAndRecordEveryTick() {
+        ExchangeRateEngine engine = engine(new SimulatedClock(START, 0));
+        ExchangeRateEngine other = engine(new SimulatedClock(START, 0));
+
+        RateSnapshot first = engine.current();
+        ((SimulatedClock) engine.clock).advance(Duration.ofMinutes(10));
+        engine.tick();
+        RateSnapshot tenMinutesLater = engine.current();
+
+        assertEquals(START.getEpochSecond(), first.tick());
+        assertEquals(START.getEpochSecond() + 600, tenMinutesLater.tick());
+        assertEquals(START, first.timestamp());
+        // Same clock, same rates
+        assertEquals(first.rates(), other.current().rates());
+        // The ticks skipped by the clock are in the history too
+        assertEquals(601, engine.rateHistory.query("EUR", 0, Long.MAX_VALUE - 1).size());
+    }
+
+    @Test
+    void shouldOnlyComputeTheTicksOnTheScheduler() {
+        SimulatedClock clock = new SimulatedClock(START, 0);
+        ExchangeRateEngine engine = engine(clock);
+        RateSnapshot first = engine.current();
+
+        clock.advance(Duration.ofSeconds(5));
+
+        // Requests read the published snapshot, even once the clock moved
+        assertSame(first, engine.current());
+        engine.tick();
+        assertEquals(START.getEpochSecond() + 5, engine.current().tick());
+    }
+
+    private static ExchangeRateEngine engine(SimulatedClock clock) {
+        return TestEngines.engine(clock, 1_000, TestEngines::sineRateSource);
+    }
+}
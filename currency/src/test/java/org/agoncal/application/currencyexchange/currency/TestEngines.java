@@ -0,0 +1,56 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import java.time.Clock;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Engines wired by hand, without Quarkus, on the default currencies.
+ */
+final class TestEngines {
+
+    private TestEngines() {
+    }
+
+    static CurrencyRegistry currencyRegistry() {
+        CurrencyRegistry currencyRegistry = new CurrencyRegistry();
+        currencyRegistry.currenciesFile = Optional.empty();
+        currencyRegistry.init();
+        return currencyRegistry;
+    }
+
+    /**
+     * @return an engine with the sine source, keeping 10 samples per currency
+     */
+    static ExchangeRateEngine engine(Clock clock) {
+        return engine(clock, 10, TestEngines::sineRateSource);
+    }
+
+    static SineRateSource sineRateSource(CurrencyRegistry currencyRegistry) {
+        SineRateSource rateSource = new SineRateSource();
+        rateSource.fluctuationFactor = 0.02;
+        rateSource.currencyRegistry = currencyRegistry;
+        return rateSource;
+    }
+
+    static ExchangeRateEngine engine(Clock clock, int historyCapacity, Function<CurrencyRegistry, RateSource> rateSource) {
+        CurrencyRegistry currencyRegistry = currencyRegistry();
+        ExchangeRateEngine engine = new ExchangeRateEngine();
+        engine.clock = clock;
+        engine.stringTimestampEnabled = true;
+        engine.currencyRegistry = currencyRegistry;
+        engine.rateHistory = new RateHistory();
+        engine.rateHistory.capacity = historyCapacity;
+        engine.rateHistory.currencyRegistry = currencyRegistry;
+        engine.rateHistory.init();
+        engine.candleAggregator = new CandleAggregator();
+        engine.candleAggregator.capacity = 10;
+        engine.candleAggregator.currencyRegistry = currencyRegistry;
+        engine.candleAggregator.init();
+        engine.thresholdSubscriptions = new ThresholdSubscriptions();
+        engine.thresholdSubscriptions.currencyRegistry = currencyRegistry;
+        engine.thresholdSubscriptions.init();
+        engine.init(rateSource.apply(currencyRegistry));
+        return engine;
+    }
+}
@@ -0,0 +1,206 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThresholdSubscriptionsTest {
+
+    private CurrencyRegistry currencyRegistry;
+    private ThresholdSubscriptions thresholdSubscriptions;
+    private RateSnapshot current;
+
+    @BeforeEach
+    void setUp() {
+        ExchangeRateEngine engine = TestEngines.engine(new SimulatedClock(Instant.parse("2024-01-01T00:00:00Z"), 0));
+        currencyRegistry = engine.currencyRegistry;
+        thresholdSubscriptions = new ThresholdSubscriptions();
+        thresholdSubscriptions.currencyRegistry = currencyRegistry;
+        thresholdSubscriptions.init();
+        current = engine.current();
+    }
+
+    @Test
+    void shouldOnlyPushTheMovesLargerThanTheThreshold() {
+        int eur = currencyRegistry.idOf("EUR");
+        long reference = current.rates().get(eur).rate().scaledTo(RateHistory.SCALE);
+        // 20 basis points of the EUR rate, in scaled units (0.9217 -> 18.4, rounded down to 18)
+        long band = reference * 20 / 10_000;
+        Collector narrow = new Collector();
+        Collector wide = new Collector();
+        thresholdSubscriptions.subscribe(List.of(threshold("EUR", 20)), narrow, current);
+        thresholdSubscriptions.subscribe(List.of(threshold("EUR", 200), threshold("JPY", 200)), wide, current);
+        assertEquals(3, thresholdSubscriptions.triggers());
+
+        assertEquals(0, thresholdSubscriptions.fire(eur, reference + band, rate("EUR", reference + band)));
+        assertEquals(1, thresholdSubscriptions.fire(eur, reference + band + 1, rate("EUR", reference + band + 1)));
+        // The band moved around the new rate
+        assertEquals(0, thresholdSubscriptions.fire(eur, reference + band + 1, rate("EUR", reference + band + 1)));
+        assertEquals(1, thresholdSubscriptions.fire(eur, reference - band, rate("EUR", reference - band)));
+        // Both fire on a crash
+        assertEquals(2, thresholdSubscriptions.fire(eur, reference / 2, rate("EUR", reference / 2)));
+
+        assertEquals(List.of(reference + band + 1, reference - band, reference / 2),
+            narrow.rates.stream().map(ExchangeRate::getRateMantissa).toList());
+        assertEquals(List.of(reference / 2), wide.rates.stream().map(ExchangeRate::getRateMantissa).toList());
+    }
+
+    @Test
+    void shouldNotPushAMoveOfExactlyTheThreshold() {
+        int eur = currencyRegistry.idOf("EUR");
+        long reference = current.rates().get(eur).rate().scaledTo(RateHistory.SCALE);
+        Collector collector = new Collector();
+        // 100%: the band is exactly the reference rate wide
+        thresholdSubscriptions.subscribe(List.of(threshold("EUR", 10_000)), collector, current);
+
+        assertEquals(0, thresholdSubscriptions.fire(eur, 2 * reference, rate("EUR", 2 * reference)));
+        assertEquals(0, thresholdSubscriptions.fire(eur, 0, rate("EUR", 0)));
+        assertEquals(1, thresholdSubscriptions.fire(eur, 2 * reference + 1, rate("EUR", 2 * reference + 1)));
+        assertEquals(List.of(2 * reference + 1), collector.rates.stream().map(ExchangeRate::getRateMantissa).toList());
+    }
+
+    @Test
+    void shouldOnlyKeepTheLatestRateOfASlowSubscriber() {
+        int eur = currencyRegistry.idOf("EUR");
+        int jpy = currencyRegistry.idOf("JPY");
+        long eurReference = current.rates().get(eur).rate().scaledTo(RateHistory.SCALE);
+        long jpyReference = current.rates().get(jpy).rate().scaledTo(RateHistory.SCALE);
+        SlowCollector slow = new SlowCollector();
+        thresholdSubscriptions.subscribe(List.of(threshold("EUR", 1), threshold("JPY", 1)), slow, current);
+
+        // Every move fires, but nothing is sent while the transport is not ready
+        for (int move = 1; move <= 1_000; move++) {
+            assertEquals(1, thresholdSubscriptions.fire(eur, eurReference + move * eurReference, rate("EUR", eurReference + move * eurReference)));
+        }
+        assertEquals(1, thresholdSubscriptions.fire(jpy, jpyReference / 2, rate("JPY", jpyReference / 2)));
+        assertEquals(0, slow.rates.size());
+
+        slow.ready = true;
+        slow.onReadyHandler.run();
+
+        // The latest rate of each trigger
+        assertEquals(List.of(eurReference + 1_000 * eurReference, jpyReference / 2),
+            slow.rates.stream().map(ExchangeRate::getRateMantissa).toList());
+    }
+
+    @Test
+    void shouldEvaluateTheThresholdsOnEveryEngineTick() {
+        SimulatedClock clock = new SimulatedClock(Instant.parse("2024-01-01T00:00:00Z"), 0);
+        ExchangeRateEngine engine = TestEngines.engine(clock);
+        Collector collector = new Collector();
+        // 1 basis point, the sine source moves every rate by more than that each second
+        engine.thresholdSubscriptions.subscribe(List.of(threshold("EUR", 1)), collector, engine.current());
+
+        for (int tick = 0; tick < 5; tick++) {
+            clock.advance(Duration.ofSeconds(1));
+            engine.tick();
+        }
+
+        assertFalse(collector.rates.isEmpty());
+        assertEquals(engine.current().grpcRates().get(engine.currencyRegistry.idOf("EUR")), collector.rates.get(collector.rates.size() - 1));
+    }
+
+    @Test
+    void shouldRejectInvalidThresholds() {
+        Collector collector = new Collector();
+
+        assertThrows(IllegalArgumentException.class,
+            () -> thresholdSubscriptions.subscribe(List.of(threshold("XXX", 10)), collector, current));
+        assertThrows(IllegalArgumentException.class,
+            () -> thresholdSubscriptions.subscribe(List.of(threshold("EUR", 0)), collector, current));
+        assertEquals(0, thresholdSubscriptions.triggers());
+    }
+
+    private static CurrencyThreshold threshold(String currencyCode, int basisPoints) {
+        return CurrencyThreshold.newBuilder().setCurrencyCode(currencyCode).setBasisPoints(basisPoints).build();
+    }
+
+    private static ExchangeRate rate(String currencyCode, long scaledRate) {
+        return ExchangeRate.newBuilder()
+            .setCurrencyCode(currencyCode)
+            .setRateMantissa(scaledRate)
+            .setRateScale(RateHistory.SCALE)
+            .build();
+    }
+
+    private static final class Collector implements StreamObserver<ExchangeRate> {
+
+        final List<ExchangeRate> rates = new ArrayList<>();
+
+        @Override
+        public void onNext(ExchangeRate value) {
+            rates.add(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+
+    private static final class SlowCollector extends ServerCallStreamObserver<ExchangeRate> {
+
+        final List<ExchangeRate> rates = new ArrayList<>();
+        boolean ready;
+        Runnable onReadyHandler;
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void setOnReadyHandler(Runnable onReadyHandler) {
+            this.onReadyHandler = onReadyHandler;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public void setOnCancelHandler(Runnable onCancelHandler) {
+        }
+
+        @Override
+        public void setCompression(String compression) {
+        }
+
+        @Override
+        public void disableAutoInboundFlowControl() {
+        }
+
+        @Override
+        public void request(int count) {
+        }
+
+        @Override
+        public void setMessageCompression(boolean enable) {
+        }
+
+        @Override
+        public void onNext(ExchangeRate value) {
+            rates.add(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.agoncal.application.currencyexchange.currency;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TickFileRateSourceTest {
+
+    @TempDir
+    Path directory;
+
+    private CurrencyRegistry currencyRegistry;
+    private TickFileRateSource source;
+
+    @BeforeEach
+    void setUp() {
+        currencyRegistry = new CurrencyRegistry();
+        currencyRegistry.currenciesFile = Optional.empty();
+        currencyRegistry.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (source != null) {
+            source.destroy();
+        }
+    }
+
+    @Test
+    void shouldReplayACsvFile() throws Exception {
+        Path file = directory.resolve("ticks.csv");
+        Files.writeString(file, """
+            epoch_millis,currency_code,rate
+            1700000000000,EUR,0.9217
+            1700000000500,JPY,149.25
+            1700000001000,EUR,0.92185
+            1700000001000,XXX,1.0
+            1700000002000,GBP,not a rate
+            1700000003000,GBP,0.79""");
+
+        source = start(file, 0, false);
+
+        long[] rates = awaitReplay();
+        assertEquals(9219, rates[currencyRegistry.idOf("EUR")]);
+        assertEquals(1_492_500, rates[currencyRegistry.idOf("JPY")]);
+        assertEquals(7900, rates[currencyRegistry.idOf("GBP")]);
+        // Not replayed, still the base rate
+        assertEquals(15234, rates[currencyRegistry.idOf("AUD")]);
+        assertEquals(4, source.replayedTicks());
+        assertEquals(2, source.skippedTicks());
+    }
+
+    @Test
+    void shouldReplayABinaryFile() throws Exception {
+        int ticks = 10_000;
+        ByteBuffer buffer = ByteBuffer.allocate(TickFileRateSource.BINARY_HEADER_SIZE + ticks * TickFileRateSource.BINARY_RECORD_SIZE);
+        buffer.putInt(TickFileRateSource.BINARY_MAGIC).putInt(TickFileRateSource.BINARY_VERSION);
+        for (int i = 0; i < ticks; i++) {
+            buffer.putLong(1_700_000_000_000L + i)
+                .put((i % 2 == 0 ? "CHF" : "CAD").getBytes(StandardCharsets.US_ASCII)).put((byte) 0)
+                .putLong(10_000 + i);
+        }
+        Path file = directory.resolve("ticks.bin");
+        Files.write(file, buffer.array());
+
+        source = start(file, 0, false);
+
+        long[] rates = awaitReplay();
+        assertEquals(10_000 + ticks - 2, rates[currencyRegistry.idOf("CHF")]);
+        assertEquals(10_000 + ticks - 1, rates[currencyRegistry.idOf("CAD")]);
+        assertEquals(ticks, source.replayedTicks());
+    }
+
+    @Test
+    void shouldPaceTheReplay() throws Exception {
+        Path file = directory.resolve("ticks.csv");
+        Files.writeString(file, "1700000000000,EUR,0.9\n1700000002000,EUR,1.1\n");
+
+        // 2 seconds of ticks at 10 times the real speed
+        long start = System.nanoTime();
+        source = start(file, 10, false);
+        awaitReplay();
+
+        assertTrue(System.nanoTime() - start >= 200_000_000L);
+    }
+
+    private TickFileRateSource start(Path file, double speed, boolean loop) throws IOException {
+        TickFileRateSource tickFileRateSource = new TickFileRateSource();
+        tickFileRateSource.file = Optional.of(file.toString());
+        tickFileRateSource.speed = speed;
+        tickFileRateSource.loop = loop;
+        tickFileRateSource.currencyRegistry = currencyRegistry;
+        tickFileRateSource.init();
+        return tickFileRateSource;
+    }
+
+    private long[] awaitReplay() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!source.finished()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Replay not finished");
+            Thread.sleep(10);
+        }
+        long[] rates = new long[currencyRegistry.size()];
+        source.rates(0, rates);
+        return rates;
+    }
+}
@@ -0,0 +1,96 @@
+package org.agoncal.application.currencyexchange.portfolio;
+
+import io.quarkus.grpc.GrpcClient;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.subscription.Cancellable;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import org.agoncal.application.currencyexchange.currency.Empty;
+import org.agoncal.application.currencyexchange.currency.ExchangeRate;
+import org.agoncal.application.currencyexchange.currency.ExchangeRateListResponse;
+import org.agoncal.application.currencyexchange.currency.ExchangeRateService;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local copy of the current exchange rates, kept up to date by a single long-lived
+ * StreamRates subscription to the currency service. Reading the board costs no
+ * network round trip. When the stream is down the board is emptied, so callers
+ * fall back on the unary gRPC calls instead of serving stale rates.
+ */
+@ApplicationScoped
+public class ExchangeRateBoard {
+
+    private static final Logger LOG = Logger.getLogger(ExchangeRateBoard.class);
+
+    @GrpcClient("currency")
+    ExchangeRateService exchangeRateService;
+
+    @ConfigProperty(name = "exchange-rates.stream.enabled", defaultValue = "true")
+    boolean streamEnabled;
+
+    private volatile Board board = Board.EMPTY;
+    private Cancellable subscription;
+
+    void onStart(@Observes StartupEvent event) {
+        if (!streamEnabled) {
+            LOG.info("Exchange rate stream disabled");
+            return;
+        }
+
+        LOG.info("Subscribing to the exchange rate stream");
+        subscription = exchangeRateService.streamRates(Empty.newBuilder().build())
+            // The server completes the stream when it shuts down, in that case we resubscribe too
+            .onCompletion().failWith(() -> new IllegalStateException("Exchange rate stream completed"))
+            .onFailure().invoke(failure -> {
+                LOG.warn("Exchange rate stream interrupted: " + failure.getMessage());
+                board = Board.EMPTY;
+            })
+            .onFailure().retry().withBackOff(Duration.ofSeconds(1), Duration.ofSeconds(30)).indefinitely()
+            .subscribe().with(this::update);
+    }
+
+    void onStop(@Observes ShutdownEvent event) {
+        if (subscription != null) {
+            subscription.cancel();
+        }
+    }
+
+    void update(ExchangeRateListResponse response) {
+        // The first message has all the rates, the next ones only the rates that changed
+        Map<String, ExchangeRate> ratesByCurrency = new LinkedHashMap<>();
+        if (response.getDelta()) {
+            for (ExchangeRate rate : board.rates()) {
+                ratesByCurrency.put(rate.getCurrencyCode(), rate);
+            }
+        }
+        for (ExchangeRate rate : response.getRatesList()) {
+            ratesByCurrency.put(rate.getCurrencyCode(), rate);
+        }
+        board = new Board(List.copyOf(ratesByCurrency.values()), Map.copyOf(ratesByCurrency));
+    }
+
+    /**
+     * @return all the current rates, or an empty list if the stream is not connected
+     */
+    public List<ExchangeRate> getAllCurrentRates() {
+        return board.rates();
+    }
+
+    /**
+     * @return the current rate of the currency, or null if the stream is not connected
+     */
+    public ExchangeRate getCurrentRate(String currencyCode) {
+        return board.ratesByCurrency().get(currencyCode);
+    }
+
+    private record Board(List<ExchangeRate> rates, Map<String, ExchangeRate> ratesByCurrency) {
+        static final Board EMPTY = new Board(List.of(), Map.of());
+    }
+}
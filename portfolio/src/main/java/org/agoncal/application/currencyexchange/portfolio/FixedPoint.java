@@ -0,0 +1,29 @@
+package org.agoncal.application.currencyexchange.portfolio;
+
+import org.agoncal.application.currencyexchange.currency.ExchangeRate;
+
+import java.math.BigDecimal;
+
+/**
+ * Exact decimal number held as a long mantissa and a number of decimal places:
+ * 0.9217 is {@code FixedPoint(9217, 4)}. It is what the gRPC ExchangeRate carries
+ * in {@code rate_mantissa} and {@code rate_scale}, so a trade gets the exact rate
+ * instead of the double one.
+ */
+public record FixedPoint(long mantissa, int scale) {
+
+    /**
+     * @return the exact rate, or the double rate if the currency service does not send the fixed-point one
+     */
+    public static FixedPoint of(ExchangeRate rate) {
+        if (rate.getRateMantissa() == 0 && rate.getRate() != 0) {
+            BigDecimal value = BigDecimal.valueOf(rate.getRate());
+            return new FixedPoint(value.unscaledValue().longValueExact(), value.scale());
+        }
+        return new FixedPoint(rate.getRateMantissa(), rate.getRateScale());
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(mantissa, scale);
+    }
+}
@@ -2,13 +2,18 @@ package org.agoncal.application.currencyexchange.portfolio;
 
 import io.quarkus.grpc.GrpcClient;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.agoncal.application.currencyexchange.currency.AllRatesRequest;
+import org.agoncal.application.currencyexchange.currency.CurrencyListRequest;
 import org.agoncal.application.currencyexchange.currency.CurrencyRequest;
-import org.agoncal.application.currencyexchange.currency.Empty;
 import org.agoncal.application.currencyexchange.currency.ExchangeRate;
 import org.agoncal.application.currencyexchange.currency.ExchangeRateServiceGrpc;
+import org.agoncal.application.currencyexchange.currency.RateResult;
 import static org.agoncal.application.currencyexchange.portfolio.User.USER_PORTFOLIOS;
 import org.agoncal.application.currencyexchange.portfolio.trade.Trade;
+import org.agoncal.application.currencyexchange.portfolio.trade.TradePage;
 import org.agoncal.application.currencyexchange.portfolio.trade.TradeService;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.faulttolerance.Fallback;
 import org.eclipse.microprofile.rest.client.inject.RestClient;
 import org.jboss.logging.Logger;
@@ -16,6 +21,7 @@ import org.jboss.logging.Logger;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
@@ -27,9 +33,18 @@ public class PortfolioService {
     @GrpcClient("currency")
     ExchangeRateServiceGrpc.ExchangeRateServiceBlockingStub exchangeRateService;
 
+    @Inject
+    ExchangeRateBoard exchangeRateBoard;
+
     @RestClient
     TradeService tradeService;
 
+    @ConfigProperty(name = "trades.page-size", defaultValue = "50")
+    int tradePageSize;
+
+    @ConfigProperty(name = "trades.history-limit", defaultValue = "1000")
+    int tradeHistoryLimit;
+
     public List<Portfolio> getUserPortfolio(String userId) {
         LOG.info("Get portfolio for user " + userId);
 
@@ -41,18 +56,51 @@ public class PortfolioService {
 
     @Fallback(fallbackMethod = "fallbackGetAllCurrentRates")
     public List<ExchangeRate> getAllCurrentRates() {
+        List<ExchangeRate> rates = exchangeRateBoard.getAllCurrentRates();
+        if (!rates.isEmpty()) {
+            return rates;
+        }
+
         LOG.info("Get all currency rates");
 
-        return exchangeRateService.getAllCurrentRates(Empty.newBuilder().build()).getRatesList();
+        return exchangeRateService.getAllCurrentRates(AllRatesRequest.getDefaultInstance()).getRatesList();
     }
 
     @Fallback(fallbackMethod = "fallbackGetCurrentRate")
     public ExchangeRate getCurrentRate(String currencyCode) {
+        ExchangeRate rate = exchangeRateBoard.getCurrentRate(currencyCode);
+        if (rate != null) {
+            return rate;
+        }
+
         LOG.info("Get currency rate: " + currencyCode);
 
         return exchangeRateService.getCurrentRate(CurrencyRequest.newBuilder().setCurrencyCode(currencyCode).build()).getRate();
     }
 
+    /**
+     * Gets the rates of several currencies in one call (e.g. for basket orders).
+     * There is one result per currency code, holding either its rate or an error.
+     */
+    @Fallback(fallbackMethod = "fallbackGetRates")
+    public List<RateResult> getRates(List<String> currencyCodes) {
+        List<RateResult> results = new ArrayList<>(currencyCodes.size());
+        for (String currencyCode : currencyCodes) {
+            ExchangeRate rate = exchangeRateBoard.getCurrentRate(currencyCode);
+            if (rate == null) {
+                break;
+            }
+            results.add(RateResult.newBuilder().setCurrencyCode(currencyCode).setRate(rate).build());
+        }
+        if (results.size() == currencyCodes.size()) {
+            return results;
+        }
+
+        LOG.info("Get currency rates: " + currencyCodes);
+
+        return exchangeRateService.getRates(CurrencyListRequest.newBuilder().addAllCurrencyCodes(currencyCodes).build()).getResultsList();
+    }
+
     @Fallback(fallbackMethod = "fallbackExecuteTrade")
     public void executeTrade(Trade trade) {
         LOG.info("Execute trade: " + trade);
@@ -61,11 +109,54 @@ public class PortfolioService {
         updateUserPortfolio(trade);
     }
 
+    /**
+     * Buys usdAmount of each currency of the basket, at the rates of a single GetRates call.
+     * A currency without a rate (unsupported, etc.) is not traded.
+     *
+     * @return the executed trades, in the order of the currency codes
+     */
+    public List<Trade> executeTrades(String userId, BigDecimal usdAmount, List<String> currencyCodes) {
+        List<Trade> trades = new ArrayList<>(currencyCodes.size());
+        for (RateResult result : getRates(currencyCodes)) {
+            if (!result.hasRate()) {
+                LOG.warn("No rate to trade " + result.getCurrencyCode() + ": " + result.getError());
+                continue;
+            }
+            Trade trade = new Trade(userId, usdAmount, result.getCurrencyCode(), FixedPoint.of(result.getRate()));
+            executeTrade(trade);
+            trades.add(trade);
+        }
+        return trades;
+    }
+
+    /**
+     * @return the most recent trades of the user, newest first: one page of the history
+     */
+    @Fallback(fallbackMethod = "fallbackGetRecentTrades")
+    public List<Trade> getRecentTrades(String userId) {
+        LOG.info("Get recent trades");
+
+        return tradeService.getTradePage(userId, null, null, null, tradePageSize).trades();
+    }
+
+    /**
+     * @return the trades of the user, oldest first, fetched page by page: the whole history,
+     * or only its most recent {@code trades.history-limit} trades when it is longer
+     */
     @Fallback(fallbackMethod = "fallbackGetAllTrades")
     public List<Trade> getAllTrades(String userId) {
         LOG.info("Get all trades");
 
-        return tradeService.getAllTrades(userId);
+        List<Trade> trades = new ArrayList<>();
+        String cursor = null;
+        do {
+            int limit = Math.min(tradePageSize, tradeHistoryLimit - trades.size());
+            TradePage page = tradeService.getTradePage(userId, null, null, cursor, limit);
+            trades.addAll(page.trades());
+            cursor = page.nextCursor();
+        } while (cursor != null && trades.size() < tradeHistoryLimit);
+        Collections.reverse(trades);
+        return trades;
     }
 
     public List<ExchangeRate> fallbackGetAllCurrentRates() {
@@ -86,6 +177,17 @@ public class PortfolioService {
         return ExchangeRate.newBuilder().setCurrencyCode(currencyCode).setRate(0).build();
     }
 
+    public List<RateResult> fallbackGetRates(List<String> currencyCodes) {
+        LOG.warn("Falling back on get currency rates: " + currencyCodes);
+
+        return currencyCodes.stream()
+            .map(currencyCode -> RateResult.newBuilder()
+                .setCurrencyCode(currencyCode)
+                .setRate(ExchangeRate.newBuilder().setCurrencyCode(currencyCode).setRate(0).build())
+                .build())
+            .toList();
+    }
+
     private static final List<Trade> FALLBACK_TRADES = new ArrayList<>();
 
     public void fallbackExecuteTrade(Trade trade) {
@@ -94,19 +196,32 @@ public class PortfolioService {
         FALLBACK_TRADES.add(trade);
     }
 
+    public List<Trade> fallbackGetRecentTrades(String userId) {
+        LOG.warn("Falling back on get recent trades");
+
+        return fallbackTrades(userId, tradePageSize).reversed();
+    }
+
     public List<Trade> fallbackGetAllTrades(String userId) {
         LOG.warn("Falling back on get all trades");
 
-        return FALLBACK_TRADES;
+        return fallbackTrades(userId, tradeHistoryLimit);
+    }
+
+    /**
+     * @return the most recent trades of the user kept by the fallback, at most limit of them, oldest first
+     */
+    private static List<Trade> fallbackTrades(String userId, int limit) {
+        List<Trade> trades = FALLBACK_TRADES.stream()
+            .filter(trade -> userId.equals(trade.userId()))
+            .toList();
+        return trades.subList(Math.max(0, trades.size() - limit), trades.size());
     }
 
     private static void updateUserPortfolio(Trade trade) {
         // Update user portfolio balance for the target currency
         List<Portfolio> userPortfolios = USER_PORTFOLIOS.get(trade.userId());
         if (userPortfolios != null) {
-            // Calculate converted amount
-            BigDecimal convertedAmount = trade.usdAmount().multiply(trade.exchangeRate());
-
             // Find the portfolio entry for the target currency
             Portfolio targetPortfolio = userPortfolios.stream()
                 .filter(p -> p.currency().equals(trade.toCurrency()))
@@ -116,7 +231,7 @@ public class PortfolioService {
             if (targetPortfolio != null) {
                 // Update the balance by adding the converted amount (rounded to 1 decimal)
                 BigDecimal newBalance = targetPortfolio.balance()
-                    .add(convertedAmount)
+                    .add(trade.usdAmount().multiply(trade.exchangeRate()))
                     .setScale(1, RoundingMode.HALF_UP);
                 Portfolio updatedPortfolio = new Portfolio(
                     targetPortfolio.id(),
@@ -1,5 +1,7 @@
 package org.agoncal.application.currencyexchange.portfolio.trade;
 
+import org.agoncal.application.currencyexchange.portfolio.FixedPoint;
+
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
@@ -23,8 +25,8 @@ public record Trade(
         this(userId, LocalDateTime.now(), usdAmount, toCurrency, convertedAmount, exchangeRate, "CREATED");
     }
 
-    public Trade(String email, BigDecimal usdAmount, String toCurrency, double rate) {
-        this(email, LocalDateTime.now(), usdAmount, toCurrency, null, BigDecimal.valueOf(rate), "CREATED");
+    public Trade(String email, BigDecimal usdAmount, String toCurrency, FixedPoint rate) {
+        this(email, LocalDateTime.now(), usdAmount, toCurrency, null, rate.toBigDecimal(), "CREATED");
     }
 }
 
@@ -6,10 +6,11 @@ import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
 import org.eclipse.microprofile.rest.client.inject.RegisterRestClient;
 
-import java.util.List;
+import java.time.LocalDateTime;
 
 @Path("/api/trades")
 @Produces(MediaType.APPLICATION_JSON)
@@ -20,7 +21,14 @@ public interface TradeService {
     @POST
     void executeTrade(Trade trade);
 
+    /**
+     * The trades from (included) to (excluded), newest first. Null parameters are not sent.
+     */
     @GET
-    @Path("/{userId}")
-    List<Trade> getAllTrades(@PathParam("userId") String userId);
+    @Path("/{userId}/page")
+    TradePage getTradePage(@PathParam("userId") String userId,
+                           @QueryParam("from") LocalDateTime from,
+                           @QueryParam("to") LocalDateTime to,
+                           @QueryParam("cursor") String cursor,
+                           @QueryParam("limit") int limit);
 }
@@ -113,7 +113,7 @@ public class WebApplication extends Controller {
         User currentUser = userSession.getCurrentUser();
         List<Portfolio> portfolios = portfolioService.getUserPortfolio(currentUser.email());
         List<ExchangeRate> exchangeRates = portfolioService.getAllCurrentRates();
-        List<Trade> trades = portfolioService.getAllTrades(currentUser.email());
+        List<Trade> trades = portfolioService.getRecentTrades(currentUser.email());
         LOG.info("Viewing portfolio for user: " + currentUser.email() + " with " + portfolios.size() + " entries and " + trades.size() + " trades");
 
         return Templates.portfolio(currentUser, portfolios, exchangeRates, trades);
@@ -131,7 +131,7 @@ public class WebApplication extends Controller {
         User currentUser = userSession.getCurrentUser();
         List<Portfolio> portfolios = portfolioService.getUserPortfolio(currentUser.email());
         List<ExchangeRate> exchangeRates = portfolioService.getAllCurrentRates();
-        List<Trade> trades = portfolioService.getAllTrades(currentUser.email());
+        List<Trade> trades = portfolioService.getRecentTrades(currentUser.email());
         LOG.info("Refreshing portfolio for user: " + currentUser.email() + " with updated exchange rates");
 
         return Templates.portfolio(currentUser, portfolios, exchangeRates, trades);
@@ -151,8 +151,8 @@ public class WebApplication extends Controller {
 
     @POST
     @Path("/executeTrade")
-    public TemplateInstance executeTrade(@RestForm BigDecimal usdAmount, @RestForm String toCurrency) {
-        LOG.info("Entering executeTrade() with amount: " + usdAmount + " to currency: " + toCurrency);
+    public TemplateInstance executeTrade(@RestForm BigDecimal usdAmount, @RestForm List<String> toCurrency) {
+        LOG.info("Entering executeTrade() with amount: " + usdAmount + " to currencies: " + toCurrency);
 
         if (!userSession.isLoggedIn()) {
             LOG.info("Trade execution attempt without authentication - redirecting to signin");
@@ -162,15 +162,11 @@ public class WebApplication extends Controller {
         User currentUser = userSession.getCurrentUser();
 
         try {
-            // Get current exchange rate for the target currency
-            ExchangeRate exchangeRate = portfolioService.getCurrentRate(toCurrency);
+            // Get the current exchange rates of all the target currencies at once, then execute one trade per currency
+            List<Trade> trades = portfolioService.executeTrades(currentUser.email(), usdAmount, toCurrency);
 
-            // Create and execute trade
-            Trade trade = new Trade(currentUser.email(), usdAmount, toCurrency, exchangeRate.getRate());
-            portfolioService.executeTrade(trade);
-
-            LOG.info("Trade executed successfully for user: " + currentUser.email() +
-                     ", amount: " + usdAmount + ", currency: " + toCurrency);
+            LOG.info("Trades executed successfully for user: " + currentUser.email() +
+                     ", amount: " + usdAmount + ", currencies: " + trades.stream().map(Trade::toCurrency).toList());
 
         } catch (Exception e) {
             LOG.error("Trade execution failed for user: " + currentUser.email(), e);
@@ -0,0 +1,90 @@
+package org.agoncal.application.currencyexchange.portfolio;
+
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.subscription.MultiEmitter;
+import org.agoncal.application.currencyexchange.currency.ExchangeRate;
+import org.agoncal.application.currencyexchange.currency.ExchangeRateListResponse;
+import org.agoncal.application.currencyexchange.currency.ExchangeRateService;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExchangeRateBoardTest {
+
+    @Test
+    void shouldMergeTheDeltasIntoTheBoard() {
+        ExchangeRateBoard board = new ExchangeRateBoard();
+
+        board.update(rates(false, rate("EUR", 0.92), rate("GBP", 0.79), rate("JPY", 149.25)));
+        board.update(rates(true, rate("GBP", 0.80)));
+
+        assertEquals(List.of("EUR", "GBP", "JPY"), board.getAllCurrentRates().stream().map(ExchangeRate::getCurrencyCode).toList());
+        assertEquals(0.92, board.getCurrentRate("EUR").getRate());
+        assertEquals(0.80, board.getCurrentRate("GBP").getRate());
+        assertEquals(149.25, board.getCurrentRate("JPY").getRate());
+    }
+
+    @Test
+    void shouldReplaceTheBoardWithAFullUpdate() {
+        ExchangeRateBoard board = new ExchangeRateBoard();
+
+        board.update(rates(false, rate("EUR", 0.92), rate("GBP", 0.79)));
+        board.update(rates(false, rate("JPY", 149.25)));
+
+        assertEquals(1, board.getAllCurrentRates().size());
+        assertNull(board.getCurrentRate("EUR"));
+        assertEquals(149.25, board.getCurrentRate("JPY").getRate());
+    }
+
+    @Test
+    void shouldEmptyTheBoardWhileTheStreamIsDown() throws InterruptedException {
+        BlockingQueue<MultiEmitter<? super ExchangeRateListResponse>> streams = new LinkedBlockingQueue<>();
+        ExchangeRateBoard board = new ExchangeRateBoard();
+        board.streamEnabled = true;
+        board.exchangeRateService = streamRates(Multi.createFrom().<ExchangeRateListResponse>emitter(streams::add));
+        board.onStart(new StartupEvent());
+        try {
+            MultiEmitter<? super ExchangeRateListResponse> stream = streams.poll(5, TimeUnit.SECONDS);
+            assertNotNull(stream);
+            stream.emit(rates(false, rate("EUR", 0.92)));
+            assertEquals(0.92, board.getCurrentRate("EUR").getRate());
+
+            stream.fail(new IllegalStateException("Connection lost"));
+            assertTrue(board.getAllCurrentRates().isEmpty());
+            assertNull(board.getCurrentRate("EUR"));
+
+            // Resubscribed after the back-off
+            MultiEmitter<? super ExchangeRateListResponse> resubscribed = streams.poll(5, TimeUnit.SECONDS);
+            assertNotNull(resubscribed);
+            resubscribed.emit(rates(false, rate("EUR", 0.93)));
+            assertEquals(0.93, board.getCurrentRate("EUR").getRate());
+        } finally {
+            board.onStop(null);
+        }
+    }
+
+    private static ExchangeRateService streamRates(Multi<ExchangeRateListResponse> stream) {
+        return (ExchangeRateService) Proxy.newProxyInstance(ExchangeRateService.class.getClassLoader(), new Class<?>[]{ExchangeRateService.class},
+            (proxy, method, args) -> {
+                if (method.getName().equals("streamRates")) {
+                    return stream;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+    }
+
+    private static ExchangeRateListResponse rates(boolean delta, ExchangeRate... rates) {
+        return ExchangeRateListResponse.newBuilder().addAllRates(List.of(rates)).setDelta(delta).build();
+    }
+
+    private static ExchangeRate rate(String currencyCode, double rate) {
+        return ExchangeRate.newBuilder().setCurrencyCode(currencyCode).setRate(rate).build();
+    }
+}
@@ -0,0 +1,59 @@
+package org.agoncal.application.currencyexchange.portfolio;
+
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.ServiceUnavailableException;
+import jakarta.ws.rs.core.MediaType;
+import org.agoncal.application.currencyexchange.portfolio.trade.Trade;
+import org.agoncal.application.currencyexchange.portfolio.trade.TradePage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-memory trades service for {@link PortfolioServiceOfflineTest}: the cursor is the number of trades already returned.
+ * The trades of {@link #UNAVAILABLE_USER} always fail, so the portfolio service falls back.
+ */
+@Path("/api/trades")
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public class FakeTradeResource {
+
+    static final String UNAVAILABLE_USER = "unavailable@example.com";
+
+    // Oldest first
+    static final Map<String, List<Trade>> TRADES = new ConcurrentHashMap<>();
+    static final List<Integer> LIMITS = new CopyOnWriteArrayList<>();
+
+    @POST
+    public void executeTrade(Trade trade) {
+        checkAvailable(trade.userId());
+        TRADES.computeIfAbsent(trade.userId(), userId -> new CopyOnWriteArrayList<>()).add(trade);
+    }
+
+    @GET
+    @Path("/{userId}/page")
+    public TradePage getTradePage(@PathParam("userId") String userId, @QueryParam("cursor") String cursor, @QueryParam("limit") int limit) {
+        checkAvailable(userId);
+        LIMITS.add(limit);
+
+        List<Trade> trades = new ArrayList<>(TRADES.getOrDefault(userId, List.of())).reversed();
+        int start = cursor == null ? 0 : Integer.parseInt(cursor);
+        int end = Math.min(start + limit, trades.size());
+        return new TradePage(trades.subList(start, end), end < trades.size() ? String.valueOf(end) : null);
+    }
+
+    private static void checkAvailable(String userId) {
+        if (UNAVAILABLE_USER.equals(userId)) {
+            throw new ServiceUnavailableException();
+        }
+    }
+}
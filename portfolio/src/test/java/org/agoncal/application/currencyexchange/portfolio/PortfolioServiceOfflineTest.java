@@ -0,0 +1,138 @@
+package org.agoncal.application.currencyexchange.portfolio;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+import org.agoncal.application.currencyexchange.currency.ExchangeRate;
+import org.agoncal.application.currencyexchange.currency.ExchangeRateListResponse;
+import org.agoncal.application.currencyexchange.currency.RateResult;
+import org.agoncal.application.currencyexchange.portfolio.trade.Trade;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The rates, the batch calls and the trade history paging, without the currency and trades services:
+ * the rate board is filled by the test, the currency service is unreachable and {@link FakeTradeResource} plays the trades service.
+ */
+@QuarkusTest
+@TestProfile(PortfolioServiceOfflineTest.OfflineProfile.class)
+class PortfolioServiceOfflineTest {
+
+    private static final int PAGE_SIZE = 2;
+    private static final int HISTORY_LIMIT = 5;
+
+    @Inject
+    PortfolioService portfolioService;
+
+    @Inject
+    ExchangeRateBoard exchangeRateBoard;
+
+    public static class OfflineProfile implements QuarkusTestProfile {
+
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of(
+                "exchange-rates.stream.enabled", "false",
+                "quarkus.grpc.clients.currency.port", "1",
+                "quarkus.rest-client.trades.url", "http://localhost:${quarkus.http.test-port:8081}",
+                "trades.page-size", String.valueOf(PAGE_SIZE),
+                "trades.history-limit", String.valueOf(HISTORY_LIMIT)
+            );
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        exchangeRateBoard.update(ExchangeRateListResponse.newBuilder()
+            .addRates(rate("EUR", 0.92))
+            .addRates(rate("GBP", 0.79))
+            .addRates(rate("JPY", 149.25))
+            .build());
+        FakeTradeResource.TRADES.clear();
+        FakeTradeResource.LIMITS.clear();
+    }
+
+    @Test
+    void shouldGetRatesFromTheBoardInTheRequestOrder() {
+        List<RateResult> results = portfolioService.getRates(List.of("JPY", "EUR"));
+
+        assertEquals(List.of("JPY", "EUR"), results.stream().map(RateResult::getCurrencyCode).toList());
+        assertEquals(149.25, results.get(0).getRate().getRate());
+        assertEquals(0.92, results.get(1).getRate().getRate());
+    }
+
+    @Test
+    void shouldFallBackOnGetRatesWhenARateIsNotOnTheBoard() {
+        // CHF is not on the board, the currency service is called and is unreachable
+        List<RateResult> results = portfolioService.getRates(List.of("EUR", "CHF"));
+
+        assertEquals(List.of("EUR", "CHF"), results.stream().map(RateResult::getCurrencyCode).toList());
+        assertTrue(results.stream().allMatch(result -> result.hasRate() && result.getRate().getRate() == 0));
+    }
+
+    @Test
+    void shouldExecuteABasketTradeAtTheBoardRates() {
+        String userId = "basket@example.com";
+
+        List<Trade> trades = portfolioService.executeTrades(userId, BigDecimal.valueOf(100), List.of("EUR", "JPY"));
+
+        assertEquals(List.of("EUR", "JPY"), trades.stream().map(Trade::toCurrency).toList());
+        assertEquals(new BigDecimal("0.92"), trades.get(0).exchangeRate());
+        assertEquals(new BigDecimal("149.25"), trades.get(1).exchangeRate());
+        assertEquals(2, FakeTradeResource.TRADES.get(userId).size());
+    }
+
+    @Test
+    void shouldGetOnePageOfRecentTradesNewestFirst() {
+        String userId = "paging@example.com";
+        for (int i = 1; i <= 3; i++) {
+            portfolioService.executeTrade(new Trade(userId, BigDecimal.valueOf(i), "EUR", BigDecimal.valueOf(0.92)));
+        }
+
+        List<Trade> trades = portfolioService.getRecentTrades(userId);
+
+        assertEquals(List.of(BigDecimal.valueOf(3), BigDecimal.valueOf(2)), trades.stream().map(Trade::usdAmount).toList());
+        assertEquals(List.of(PAGE_SIZE), FakeTradeResource.LIMITS);
+    }
+
+    @Test
+    void shouldGetTheMostRecentTradesPageByPageUpToTheHistoryLimit() {
+        String userId = "history@example.com";
+        for (int i = 1; i <= HISTORY_LIMIT + 2; i++) {
+            portfolioService.executeTrade(new Trade(userId, BigDecimal.valueOf(i), "EUR", BigDecimal.valueOf(0.92)));
+        }
+
+        List<Trade> trades = portfolioService.getAllTrades(userId);
+
+        // Oldest first, the two oldest trades are beyond the limit
+        assertEquals(List.of(3, 4, 5, 6, 7), trades.stream().map(trade -> trade.usdAmount().intValue()).toList());
+        assertEquals(List.of(2, 2, 1), FakeTradeResource.LIMITS);
+    }
+
+    @Test
+    void shouldFallBackOnTheTradesOfTheUserOnly() {
+        String userId = FakeTradeResource.UNAVAILABLE_USER;
+        for (int i = 1; i <= PAGE_SIZE + 1; i++) {
+            portfolioService.executeTrade(new Trade(userId, BigDecimal.valueOf(i), "GBP", BigDecimal.valueOf(0.79)));
+        }
+        portfolioService.executeTrade(new Trade("paging@example.com", BigDecimal.ONE, "GBP", BigDecimal.valueOf(0.79)));
+
+        List<Trade> recentTrades = portfolioService.getRecentTrades(userId);
+        List<Trade> allTrades = portfolioService.getAllTrades(userId);
+
+        assertEquals(List.of(BigDecimal.valueOf(3), BigDecimal.valueOf(2)), recentTrades.stream().map(Trade::usdAmount).toList());
+        assertTrue(allTrades.size() >= PAGE_SIZE + 1);
+        assertTrue(allTrades.stream().allMatch(trade -> userId.equals(trade.userId())));
+    }
+
+    private static ExchangeRate rate(String currencyCode, double rate) {
+        return ExchangeRate.newBuilder().setCurrencyCode(currencyCode).setRate(rate).build();
+    }
+}
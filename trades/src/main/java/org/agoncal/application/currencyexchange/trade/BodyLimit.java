@@ -0,0 +1,65 @@
+package org.agoncal.application.currencyexchange.trade;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.quarkus.runtime.configuration.MemorySize;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * quarkus.http.limits.max-body-size is raised for the batch endpoint, which streams its body instead of loading it.
+ * Every other route is held to trades.max-body-size: a larger Content-Length is answered with a 413,
+ * and a chunked body is cut at the limit while it is read.
+ */
+@ApplicationScoped
+public class BodyLimit {
+
+    static final String STREAMED_PATH = "/api/trades/batch";
+
+    // Context key read by Quarkus when it reads a body without Content-Length
+    private static final String MAX_REQUEST_SIZE = "io.quarkus.max-request-size";
+
+    @ConfigProperty(name = "trades.max-body-size", defaultValue = "10M")
+    MemorySize maxBodySize;
+
+    void install(@Observes Router router) {
+        long limit = maxBodySize.asLongValue();
+        Long limitObject = limit;
+        // Right after the global limit (order -2), before the REST endpoints
+        router.route().order(-1).handler(context -> {
+            if (STREAMED_PATH.equals(context.normalizedPath())) {
+                context.next();
+                return;
+            }
+            String contentLength = context.request().getHeader(HttpHeaderNames.CONTENT_LENGTH);
+            if (contentLength != null) {
+                long length;
+                try {
+                    length = Long.parseLong(contentLength);
+                } catch (NumberFormatException e) {
+                    close(context, HttpResponseStatus.BAD_REQUEST);
+                    return;
+                }
+                if (length > limit) {
+                    close(context, HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+                    return;
+                }
+            }
+            context.put(MAX_REQUEST_SIZE, limitObject);
+            context.next();
+        });
+    }
+
+    /**
+     * Answers without reading the body, and closes the connection so the body isn't read either.
+     */
+    private static void close(RoutingContext context, HttpResponseStatus status) {
+        context.response()
+            .putHeader(HttpHeaderNames.CONNECTION, "close")
+            .setStatusCode(status.code())
+            .end();
+    }
+}
@@ -0,0 +1,31 @@
+package org.agoncal.application.currencyexchange.trade;
+
+import java.math.BigDecimal;
+
+/**
+ * Exact decimal number held as a long mantissa and a number of decimal places:
+ * 0.9217 is {@code FixedPoint(9217, 4)}. It is how the trade journal and the trade store
+ * keep amounts, so a trade is stored without a BigDecimal per amount.
+ */
+public record FixedPoint(long mantissa, int scale) {
+
+    public static final int MAX_SCALE = 18;
+
+    public FixedPoint {
+        if (scale < 0 || scale > MAX_SCALE) {
+            throw new ArithmeticException("Scale out of range: " + scale);
+        }
+    }
+
+    /**
+     * @throws ArithmeticException if the value does not fit in a long mantissa and a scale up to {@link #MAX_SCALE}
+     */
+    public static FixedPoint of(BigDecimal value) {
+        if (value.scale() < 0) {
+            value = value.setScale(0);
+        } else if (value.scale() > MAX_SCALE) {
+            value = value.stripTrailingZeros();
+        }
+        return new FixedPoint(value.unscaledValue().longValueExact(), value.scale());
+    }
+}
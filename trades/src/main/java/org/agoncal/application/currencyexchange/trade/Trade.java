@@ -2,6 +2,7 @@ package org.agoncal.application.currencyexchange.trade;
 
 import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -9,13 +10,17 @@ import java.time.LocalDateTime;
 public record Trade(
 
     @NotBlank
+    @Utf8Size(max = TradeJournal.USER_ID_BYTES)
     String userId,
     LocalDateTime timestamp,
+    @NotNull
     @DecimalMin("0")
     BigDecimal usdAmount,
     @NotBlank
+    @Utf8Size(max = TradeJournal.CURRENCY_BYTES)
     String toCurrency,
     BigDecimal convertedAmount,
+    @NotNull
     @DecimalMin("0")
     BigDecimal exchangeRate,
     String status
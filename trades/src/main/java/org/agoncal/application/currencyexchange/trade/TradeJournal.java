@@ -0,0 +1,408 @@
+package org.agoncal.application.currencyexchange.trade;
+
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of the executed trades, so they survive a restart.
+ * Trades are written as fixed-size binary records in memory-mapped segment files, then forced to disk.
+ * Forcing is shared (group commit): the first writer waiting for its record to be durable forces all the
+ * records written so far, and the writers arriving meanwhile wait for it, then for the next force if needed.
+ * At startup, the journal is replayed into the {@link TradeStore}. A record is checked with a CRC,
+ * so a record torn by a crash ends the replay and is overwritten by the next trades.
+ * <p>
+ * A segment starts with an 8 byte header (magic {@code TRDJ}, version), followed by records of
+ * {@link #RECORD_SIZE} bytes, all integers big-endian:
+ * <pre>
+ * crc32c         int    of the 156 next bytes
+ * epoch_second   long   timestamp as UTC, Long.MIN_VALUE when there is none
+ * nano           int
+ * usd_amount     long   mantissa, then a scale byte (-1 when there is no amount)
+ * converted      long + byte
+ * exchange_rate  long + byte
+ * status         byte   0 PENDING, 1 COMPLETED, 2 FAILED, -1 none
+ * to_currency    byte length, then 8 bytes UTF-8
+ * user_id        byte length, then 106 bytes UTF-8
+ * </pre>
+ */
+@ApplicationScoped
+public class TradeJournal {
+
+    private static final Logger LOG = Logger.getLogger(TradeJournal.class);
+
+    static final int MAGIC = 0x5452444A; // TRDJ
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_SIZE = 160;
+    static final int CURRENCY_BYTES = 8;
+    static final int USER_ID_BYTES = 106;
+
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+    private static final byte NO_VALUE = -1;
+    private static final List<String> STATUSES = List.of("PENDING", "COMPLETED", "FAILED");
+
+    @ConfigProperty(name = "trades.journal.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "trades.journal.directory", defaultValue = "data/journal")
+    String directory;
+
+    @ConfigProperty(name = "trades.journal.segment-size", defaultValue = "67108864")
+    int segmentSize;
+
+    @Inject
+    TradeStore tradeStore;
+
+    // Guarded by the journal
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment current;
+    private long written;
+
+    // Group commit, guarded by forceLock
+    private final Object forceLock = new Object();
+    private long durable;
+    private boolean forcing;
+
+    void onStart(@Observes StartupEvent event) {
+        if (!enabled) {
+            LOG.info("Trade journal disabled");
+            return;
+        }
+        long start = System.nanoTime();
+        long replayed = open(tradeStore::append);
+        LOG.info("Replayed " + replayed + " trades from the journal in " + directory + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    void onStop(@Observes ShutdownEvent event) {
+        close();
+    }
+
+    /**
+     * Opens the journal, and gives the trades already in it to the consumer, oldest first.
+     *
+     * @return the number of trades replayed
+     */
+    synchronized long open(Consumer<Trade> replay) {
+        if (segmentSize < HEADER_SIZE + RECORD_SIZE) {
+            throw new IllegalArgumentException("Journal segment size too small: " + segmentSize);
+        }
+        try {
+            Path path = Paths.get(directory);
+            Files.createDirectories(path);
+            List<Path> files;
+            try (Stream<Path> list = Files.list(path)) {
+                files = list.filter(file -> file.getFileName().toString().matches("trades-\\d{6}\\.journal")).sorted().toList();
+            }
+
+            long replayed = 0;
+            for (Path file : files) {
+                Segment segment = Segment.map(file, segmentSize);
+                segments.add(segment);
+                replayed += segment.replay(replay);
+            }
+            current = segments.isEmpty() ? newSegment() : segments.get(segments.size() - 1);
+            written = replayed;
+            durable = replayed;
+            return replayed;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open the trade journal in " + directory, e);
+        }
+    }
+
+    /**
+     * Writes the trade to the journal, and returns once it is on disk.
+     *
+     * @throws IllegalArgumentException if the trade doesn't fit in a record
+     */
+    public void append(Trade trade) {
+        if (!enabled) {
+            return;
+        }
+        awaitDurable(write(List.of(encode(trade))));
+    }
+
+    /**
+     * Writes the trades to the journal, one after the other, and returns once they are all on disk.
+     *
+     * @throws IllegalArgumentException if a trade doesn't fit in a record, then none is written
+     */
+    public void appendAll(List<Trade> trades) {
+        if (!enabled || trades.isEmpty()) {
+            return;
+        }
+        List<byte[]> records = new ArrayList<>(trades.size());
+        for (Trade trade : trades) {
+            records.add(encode(trade));
+        }
+        awaitDurable(write(records));
+    }
+
+    private synchronized long write(List<byte[]> records) {
+        if (current == null) {
+            throw new IllegalStateException("Trade journal not open");
+        }
+        for (byte[] record : records) {
+            if (!current.hasRoom()) {
+                // Every record of a full segment is on disk before the next one is written
+                current.force();
+                current = newSegment();
+            }
+            current.write(record);
+        }
+        written += records.size();
+        return written;
+    }
+
+    private void awaitDurable(long sequence) {
+        while (true) {
+            synchronized (forceLock) {
+                while (forcing && durable < sequence) {
+                    try {
+                        forceLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while waiting for the trade journal", e);
+                    }
+                }
+                if (durable >= sequence) {
+                    return;
+                }
+                forcing = true;
+            }
+
+            // This writer forces the records of all the writers so far, the others keep writing meanwhile
+            long target;
+            Segment segment;
+            synchronized (this) {
+                target = written;
+                segment = current;
+            }
+            boolean forced = false;
+            try {
+                segment.force();
+                forced = true;
+            } finally {
+                synchronized (forceLock) {
+                    if (forced) {
+                        durable = Math.max(durable, target);
+                    }
+                    forcing = false;
+                    forceLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    synchronized void close() {
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+        current = null;
+    }
+
+    private Segment newSegment() {
+        try {
+            Path file = Paths.get(directory).resolve(String.format("trades-%06d.journal", segments.size()));
+            Segment segment = Segment.map(file, segmentSize);
+            segment.writeHeader();
+            segments.add(segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create a trade journal segment in " + directory, e);
+        }
+    }
+
+    static byte[] encode(Trade trade) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        buffer.position(4);
+        if (trade.timestamp() == null) {
+            buffer.putLong(NO_TIMESTAMP).putInt(0);
+        } else {
+            buffer.putLong(trade.timestamp().toEpochSecond(ZoneOffset.UTC)).putInt(trade.timestamp().getNano());
+        }
+        putAmount(buffer, trade.usdAmount());
+        putAmount(buffer, trade.convertedAmount());
+        putAmount(buffer, trade.exchangeRate());
+        if (trade.status() != null && !STATUSES.contains(trade.status())) {
+            throw new IllegalArgumentException("Unknown trade status: " + trade.status());
+        }
+        buffer.put(trade.status() == null ? NO_VALUE : (byte) STATUSES.indexOf(trade.status()));
+        putString(buffer, trade.toCurrency(), CURRENCY_BYTES);
+        putString(buffer, trade.userId(), USER_ID_BYTES);
+
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), 4, RECORD_SIZE - 4);
+        buffer.putInt(0, (int) crc.getValue());
+        return buffer.array();
+    }
+
+    static Trade decode(ByteBuffer buffer) {
+        long epochSecond = buffer.getLong();
+        int nano = buffer.getInt();
+        LocalDateTime timestamp = epochSecond == NO_TIMESTAMP ? null : LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC);
+        BigDecimal usdAmount = getAmount(buffer);
+        BigDecimal convertedAmount = getAmount(buffer);
+        BigDecimal exchangeRate = getAmount(buffer);
+        byte status = buffer.get();
+        String toCurrency = getString(buffer, CURRENCY_BYTES);
+        String userId = getString(buffer, USER_ID_BYTES);
+        return new Trade(userId, timestamp, usdAmount, toCurrency, convertedAmount, exchangeRate, status == NO_VALUE ? null : STATUSES.get(status));
+    }
+
+    private static void putAmount(ByteBuffer buffer, BigDecimal amount) {
+        if (amount == null) {
+            buffer.putLong(0).put(NO_VALUE);
+            return;
+        }
+        try {
+            FixedPoint value = FixedPoint.of(amount);
+            buffer.putLong(value.mantissa()).put((byte) value.scale());
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount too large for the trade journal: " + amount, e);
+        }
+    }
+
+    private static BigDecimal getAmount(ByteBuffer buffer) {
+        long mantissa = buffer.getLong();
+        byte scale = buffer.get();
+        return scale == NO_VALUE ? null : BigDecimal.valueOf(mantissa, scale);
+    }
+
+    private static void putString(ByteBuffer buffer, String value, int maxBytes) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maxBytes) {
+            throw new IllegalArgumentException("Too long for the trade journal (" + maxBytes + " bytes at most): " + value);
+        }
+        buffer.put(value == null ? NO_VALUE : (byte) bytes.length).put(bytes).position(buffer.position() + maxBytes - bytes.length);
+    }
+
+    private static String getString(ByteBuffer buffer, int maxBytes) {
+        byte length = buffer.get();
+        byte[] bytes = new byte[maxBytes];
+        buffer.get(bytes);
+        return length == NO_VALUE ? null : new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static final class Segment {
+
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+
+        private Segment(Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment map(Path file, int size) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // Whole records only, the end of the file is never used
+            int mappedSize = HEADER_SIZE + (size - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE;
+            return new Segment(file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(mappedSize, channel.size())));
+        }
+
+        void writeHeader() {
+            buffer.putInt(0, MAGIC).putInt(4, VERSION);
+            buffer.position(HEADER_SIZE);
+        }
+
+        /**
+         * Reads the valid records, and leaves the position after the last one.
+         */
+        long replay(Consumer<Trade> replay) {
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IllegalStateException("Not a trade journal segment: " + file);
+            }
+            long replayed = 0;
+            int position = HEADER_SIZE;
+            byte[] record = new byte[RECORD_SIZE];
+            CRC32C crc = new CRC32C();
+            while (position + RECORD_SIZE <= buffer.limit()) {
+                buffer.get(position, record);
+                crc.reset();
+                crc.update(record, 4, RECORD_SIZE - 4);
+                int expected = ByteBuffer.wrap(record).getInt();
+                if (expected != (int) crc.getValue() || isZero(record)) {
+                    break;
+                }
+                replay.accept(decode(ByteBuffer.wrap(record, 4, RECORD_SIZE - 4)));
+                replayed++;
+                position += RECORD_SIZE;
+            }
+            truncate(position);
+            buffer.position(position);
+            return replayed;
+        }
+
+        /**
+         * Zeroes a record torn by a crash, and the records written after it that were not acknowledged.
+         */
+        private void truncate(int position) {
+            byte[] zeros = new byte[RECORD_SIZE];
+            byte[] record = new byte[RECORD_SIZE];
+            for (int next = position; next + RECORD_SIZE <= buffer.limit(); next += RECORD_SIZE) {
+                buffer.get(next, record);
+                if (isZero(record)) {
+                    break;
+                }
+                buffer.put(next, zeros);
+            }
+        }
+
+        private static boolean isZero(byte[] record) {
+            for (byte b : record) {
+                if (b != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean hasRoom() {
+            return buffer.remaining() >= RECORD_SIZE;
+        }
+
+        void write(byte[] record) {
+            buffer.put(record);
+        }
+
+        void force() {
+            buffer.force();
+        }
+
+        void close() {
+            try {
+                buffer.force();
+                channel.close();
+            } catch (IOException e) {
+                LOG.warn("Cannot close the trade journal segment " + file + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package org.agoncal.application.currencyexchange.trade;
+
+import java.util.List;
+
+/**
+ * A page of the trade history, newest first.
+ *
+ * @param nextCursor to get the next (older) page, null on the last page
+ */
+public record TradePage(
+
+    List<Trade> trades,
+    String nextCursor
+) {
+}
@@ -1,28 +1,250 @@
 package org.agoncal.application.currencyexchange.trade;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.smallrye.mutiny.Multi;
 import jakarta.inject.Inject;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Valid;
+import jakarta.validation.Validator;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
-import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import org.jboss.resteasy.reactive.RestStreamElementType;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Path("/api/trades")
 @Produces(MediaType.APPLICATION_JSON)
 @Consumes(MediaType.APPLICATION_JSON)
 public class TradeResource {
 
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    // Trades of a batch executed together: one journal write and one force
+    static final int CHUNK_SIZE = 1024;
+
+    // Trades of an export written to the client at once
+    static final int EXPORT_CHUNK_SIZE = 256;
+
     @Inject
     TradeService tradeService;
 
+    @Inject
+    ObjectMapper objectMapper;
+
+    @Inject
+    Validator validator;
+
     @POST
-    public void executeTrade(Trade trade) {
+    public void executeTrade(@Valid Trade trade) {
         tradeService.executeTrade(trade);
     }
 
+    /**
+     * Executes one trade per line, reading the lines as they come, and streams back one result per line.
+     * A line that can't be read or validated is rejected, the others are executed. Reading stops at malformed JSON.
+     */
+    @POST
+    @Path("/batch")
+    @Consumes(APPLICATION_NDJSON)
+    @Produces(APPLICATION_NDJSON)
+    public StreamingOutput executeTrades(InputStream lines) {
+        return output -> {
+            try (MappingIterator<Trade> trades = objectMapper.readerFor(Trade.class).readValues(lines);
+                 JsonGenerator results = objectMapper.createGenerator(output)) {
+                results.setRootValueSeparator(null);
+                // Flushed once per chunk, not after each result
+                Batch batch = new Batch(results, objectMapper.writerFor(TradeResult.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE));
+                while (true) {
+                    try {
+                        if (!trades.hasNextValue()) {
+                            break;
+                        }
+                        Trade trade = trades.nextValue();
+                        batch.add(trades.getCurrentLocation().getLineNr(), trade);
+                    } catch (JsonParseException e) {
+                        batch.reject(e.getLocation().getLineNr(), "Malformed JSON: " + e.getOriginalMessage());
+                        break;
+                    } catch (JsonMappingException e) {
+                        batch.reject(e.getLocation() == null ? -1 : e.getLocation().getLineNr(), "Invalid trade: " + e.getOriginalMessage());
+                    }
+                }
+                batch.flush();
+            }
+        };
+    }
+
     @GET
     @Path("/{userId}")
     public List<Trade> getAllTrades(@PathParam("userId") String userId) {
         return tradeService.getAllTrades(userId);
     }
-}
\ No newline at end of file
+
+    /**
+     * The trades of the user, oldest first, one per line. They are read from the store and written
+     * EXPORT_CHUNK_SIZE lines at a time, the next chunk once the previous one is sent to the client,
+     * so the heap doesn't grow with the size of the history, nor with a slow client.
+     */
+    @GET
+    @Path("/{userId}/export")
+    @Produces(APPLICATION_NDJSON)
+    public Multi<byte[]> exportTrades(@PathParam("userId") String userId) {
+        ObjectWriter tradeWriter = objectMapper.writerFor(Trade.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        return Multi.createFrom().iterable(tradeService.getAllTrades(userId))
+            .group().intoLists().of(EXPORT_CHUNK_SIZE)
+            .map(trades -> toLines(tradeWriter, trades));
+    }
+
+    /**
+     * The trades of the user, oldest first, one event each. The next trade is read from the store
+     * once the previous event is written.
+     */
+    @GET
+    @Path("/{userId}/export")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    @RestStreamElementType(MediaType.APPLICATION_JSON)
+    public Multi<Trade> streamTrades(@PathParam("userId") String userId) {
+        return Multi.createFrom().iterable(tradeService.getAllTrades(userId));
+    }
+
+    /**
+     * Count, USD total, converted totals by currency and last trade time, maintained as trades are executed.
+     */
+    @GET
+    @Path("/{userId}/summary")
+    public TradeSummary getTradeSummary(@PathParam("userId") String userId) {
+        return tradeService.getTradeSummary(userId);
+    }
+
+    /**
+     * The trades from (included) to (excluded), newest first. The next page is requested with the nextCursor of this one.
+     */
+    @GET
+    @Path("/{userId}/page")
+    public TradePage getTradePage(@PathParam("userId") String userId,
+                                  @QueryParam("from") LocalDateTime from,
+                                  @QueryParam("to") LocalDateTime to,
+                                  @QueryParam("cursor") String cursor,
+                                  @QueryParam("limit") @DefaultValue("50") @Min(1) @Max(500) int limit) {
+        try {
+            return tradeService.getTradePage(userId, from, to, cursor, limit);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+    }
+
+    // The line separator after the last line is added by the NDJSON stream
+    private byte[] toLines(ObjectWriter tradeWriter, List<Trade> trades) {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream(trades.size() * 160);
+        try (JsonGenerator generator = objectMapper.createGenerator(lines)) {
+            generator.setRootValueSeparator(null);
+            for (int i = 0; i < trades.size(); i++) {
+                if (i > 0) {
+                    generator.writeRaw('\n');
+                }
+                tradeWriter.writeValue(generator, trades.get(i));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return lines.toByteArray();
+    }
+
+    /**
+     * The results of the lines read since the last flush, in line order, and the valid trades among them.
+     */
+    private final class Batch {
+
+        private final JsonGenerator output;
+        private final ObjectWriter resultWriter;
+        private final List<TradeResult> results = new ArrayList<>(CHUNK_SIZE);
+        private final List<Trade> trades = new ArrayList<>(CHUNK_SIZE);
+        // Index in results of the result of each trade, for now a placeholder
+        private final List<Integer> positions = new ArrayList<>(CHUNK_SIZE);
+
+        Batch(JsonGenerator output, ObjectWriter resultWriter) {
+            this.output = output;
+            this.resultWriter = resultWriter;
+        }
+
+        void add(long line, Trade trade) throws IOException {
+            if (trade == null) {
+                reject(line, "Invalid trade: null");
+                return;
+            }
+            Set<ConstraintViolation<Trade>> violations = validator.validate(trade);
+            if (!violations.isEmpty()) {
+                reject(line, violations.stream()
+                    .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", ")));
+                return;
+            }
+            positions.add(results.size());
+            results.add(new TradeResult(line, null, null, null));
+            trades.add(trade);
+            if (results.size() == CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        void reject(long line, String error) throws IOException {
+            results.add(TradeResult.rejected(line, error));
+            if (results.size() == CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            execute();
+            for (TradeResult result : results) {
+                resultWriter.writeValue(output, result);
+                output.writeRaw('\n');
+            }
+            output.flush();
+            results.clear();
+            trades.clear();
+            positions.clear();
+        }
+
+        private void execute() {
+            try {
+                List<Trade> executedTrades = tradeService.executeTrades(trades);
+                for (int i = 0; i < executedTrades.size(); i++) {
+                    executed(i, executedTrades.get(i));
+                }
+            } catch (IllegalArgumentException e) {
+                // Some trades don't fit in the journal, they are found one by one
+                for (int i = 0; i < trades.size(); i++) {
+                    try {
+                        executed(i, tradeService.executeTrades(List.of(trades.get(i))).get(0));
+                    } catch (IllegalArgumentException tradeFailure) {
+                        int position = positions.get(i);
+                        results.set(position, TradeResult.rejected(results.get(position).line(), tradeFailure.getMessage()));
+                    }
+                }
+            }
+        }
+
+        private void executed(int trade, Trade executedTrade) {
+            int position = positions.get(trade);
+            results.set(position, TradeResult.executed(results.get(position).line(), executedTrade));
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package org.agoncal.application.currencyexchange.trade;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.math.BigDecimal;
+
+/**
+ * Outcome of one line of a batch of trades: the status and converted amount of the executed trade,
+ * or REJECTED and the reason.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record TradeResult(
+
+    long line,
+    String status,
+    BigDecimal convertedAmount,
+    String error
+) {
+
+    static final String REJECTED = "REJECTED";
+
+    static TradeResult executed(long line, Trade trade) {
+        return new TradeResult(line, trade.status(), trade.convertedAmount(), null);
+    }
+
+    static TradeResult rejected(long line, String error) {
+        return new TradeResult(line, REJECTED, null, error);
+    }
+}
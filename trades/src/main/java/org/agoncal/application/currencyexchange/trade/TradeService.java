@@ -1,45 +1,86 @@
 package org.agoncal.application.currencyexchange.trade;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import org.jboss.logging.Logger;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 @ApplicationScoped
 public class TradeService {
 
     private static final Logger LOG = Logger.getLogger(TradeResource.class);
 
-    private final Map<String, List<Trade>> tradeHistory = new HashMap<>();
+    @Inject
+    TradeStore tradeStore;
+
+    @Inject
+    TradeJournal tradeJournal;
 
     public void executeTrade(@Valid Trade trade) {
         LOG.info("Execute trade: " + trade);
 
+        Trade executedTrade = execute(trade);
+
+        // Store trade in history, once it is on disk
+        tradeJournal.append(executedTrade);
+        tradeStore.append(executedTrade);
+    }
+
+    /**
+     * Executes trades already validated, with one journal write (and one force) for all of them.
+     *
+     * @return the executed trades, in the same order
+     * @throws IllegalArgumentException if a trade doesn't fit in the journal, then none is executed
+     */
+    public List<Trade> executeTrades(List<Trade> trades) {
+        LOG.debug("Execute " + trades.size() + " trades");
+
+        List<Trade> executedTrades = new ArrayList<>(trades.size());
+        for (Trade trade : trades) {
+            executedTrades.add(execute(trade));
+        }
+
+        tradeJournal.appendAll(executedTrades);
+        executedTrades.forEach(tradeStore::append);
+        return executedTrades;
+    }
+
+    private static Trade execute(Trade trade) {
         // Calculate converted amount
         BigDecimal convertedAmount = trade.usdAmount().multiply(trade.exchangeRate());
 
         // Determine status based on exchange rate
-        String status = trade.exchangeRate().compareTo(BigDecimal.ZERO) == 0 ? "PENDING" : "COMPLETED";
+        String status = trade.exchangeRate().signum() == 0 ? "PENDING" : "COMPLETED";
 
         // Create new trade with converted amount and status
-        Trade executedTrade = new Trade(trade.userId(), trade.timestamp(), trade.usdAmount(), trade.toCurrency(), convertedAmount, trade.exchangeRate(), status);
-
-        // Store trade in history
-        tradeHistory.computeIfAbsent(trade.userId(), k -> new ArrayList<>()).add(executedTrade);
+        return new Trade(trade.userId(), trade.timestamp(), trade.usdAmount(), trade.toCurrency(), convertedAmount, trade.exchangeRate(), status);
     }
 
     public List<Trade> getAllTrades(@NotBlank String userId) {
         LOG.info("Getting trade history for user: " + userId);
 
-        List<Trade> trades = tradeHistory.getOrDefault(userId, new ArrayList<>());
+        // Trades executed from now on are not in this list, so it can be serialized while trades keep coming
+        List<Trade> trades = tradeStore.snapshot(userId);
 
         LOG.info("Returning " + trades.size() + " trades for user: " + userId);
         return trades;
     }
+
+    public TradeSummary getTradeSummary(@NotBlank String userId) {
+        LOG.debug("Getting trade summary for user: " + userId);
+
+        return tradeStore.summary(userId);
+    }
+
+    public TradePage getTradePage(@NotBlank String userId, LocalDateTime from, LocalDateTime to, String cursor, int limit) {
+        LOG.debug("Getting a page of " + limit + " trades for user: " + userId + " from " + from + " to " + to);
+
+        return tradeStore.page(userId, from, to, cursor, limit);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,644 @@
+package org.agoncal.application.currencyexchange.trade;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.RandomAccess;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * In-memory trade history, safe for concurrent writers and readers without locks.
+ * Each user has an append-only log: a writer reserves the next index with an atomic increment,
+ * then writes the trade in its slot and marks it written. The log is made of segments doubling in size,
+ * allocated on demand, so appending never copies nor moves the trades already stored.
+ * Readers get an immutable snapshot: the trades up to the published length when they asked.
+ * <p>
+ * The log is columnar: a trade is about 40 bytes of primitive arrays (timestamp in epoch nanos,
+ * amounts as scaled longs, currency and status as byte codes, the user id once per user), and
+ * {@link Trade} objects are only created when they are read. The rare trades that don't fit
+ * (more than 18 digits, a date beyond 2262) are kept as they are, on the side.
+ * <p>
+ * For the pages of a time range, the log is cut in blocks of 1024 trades, each sorted by timestamp
+ * the first time it is read, which are merged newest first. The blocks newer than the range or the cursor
+ * are skipped with a binary search.
+ */
+@ApplicationScoped
+public class TradeStore {
+
+    private final ConcurrentHashMap<String, UserTrades> tradesByUser = new ConcurrentHashMap<>();
+    // Shared by all the users, there are a handful of currencies and statuses
+    private final Codes currencies = new Codes();
+    private final Codes statuses = new Codes();
+
+    public void append(Trade trade) {
+        // The user id of the first trade is the one kept
+        tradesByUser.computeIfAbsent(trade.userId(), userId -> new UserTrades(userId, currencies, statuses)).append(trade);
+    }
+
+    /**
+     * @return the trades of the user, oldest first, which new trades don't change
+     */
+    public List<Trade> snapshot(String userId) {
+        UserTrades trades = tradesByUser.get(userId);
+        return trades == null ? List.of() : trades.snapshot();
+    }
+
+    /**
+     * @return the totals of the trades of the user so far, in O(number of currencies)
+     */
+    public TradeSummary summary(String userId) {
+        UserTrades trades = tradesByUser.get(userId);
+        return trades == null ? new TradeSummary(userId, 0, BigDecimal.ZERO, Map.of(), null) : trades.totals.summary(trades.userId);
+    }
+
+    /**
+     * @param from   the oldest timestamp included, or null
+     * @param to     the newest timestamp excluded, or null
+     * @param cursor the next cursor of the previous page, or null for the first page
+     * @return up to limit trades of the user, newest first, in O(log n + limit) when the trades are
+     * appended roughly in time order
+     * @throws IllegalArgumentException if the cursor is not one returned by this store, or the limit is not positive
+     */
+    public TradePage page(String userId, LocalDateTime from, LocalDateTime to, String cursor, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Invalid limit: " + limit);
+        }
+        Position after = cursor == null ? null : Position.decode(cursor);
+        UserTrades trades = tradesByUser.get(userId);
+        return trades == null ? new TradePage(List.of(), null) : trades.page(from, to, after, limit);
+    }
+
+    static final class UserTrades {
+
+        // Segment k holds FIRST_SEGMENT_SIZE << k trades, 32 segments are more than enough
+        private static final int FIRST_SEGMENT_SIZE = 16;
+        private static final int SEGMENTS = 32;
+        // Trades sorted together by timestamp, an offset in a block fits in a short
+        private static final int BLOCK_SIZE = 1024;
+
+        private final String userId;
+        private final Codes currencies;
+        private final Codes statuses;
+        private final AtomicReferenceArray<Columns> segments = new AtomicReferenceArray<>(SEGMENTS);
+        // Number of reserved slots, some may not be written yet
+        private final AtomicLong reserved = new AtomicLong();
+        // All the slots before are written. Moved forward by the readers, over the slots written since
+        private final AtomicLong published = new AtomicLong();
+        // The trades that don't fit in the columns, by index
+        private final ConcurrentHashMap<Long, Trade> unpacked = new ConcurrentHashMap<>();
+        // The full blocks sorted so far
+        private volatile SortedBlocks blocks = new SortedBlocks(new Block[0]);
+        private final Totals totals = new Totals();
+
+        UserTrades(String userId, Codes currencies, Codes statuses) {
+            this.userId = userId;
+            this.currencies = currencies;
+            this.statuses = statuses;
+        }
+
+        void append(Trade trade) {
+            long index = reserved.getAndIncrement();
+            int segment = segment(index);
+            Columns columns = segments.get(segment);
+            if (columns == null) {
+                segments.compareAndSet(segment, null, new Columns(FIRST_SEGMENT_SIZE << segment));
+                columns = segments.get(segment);
+            }
+            int offset = offset(index, segment);
+            if (!columns.pack(offset, trade, currencies, statuses)) {
+                unpacked.put(index, trade);
+                columns.publish(offset, Columns.UNPACKED);
+            }
+            totals.add(trade);
+        }
+
+        List<Trade> snapshot() {
+            return new Snapshot(this, publishedLength());
+        }
+
+        private int publishedLength() {
+            long length = published.get();
+            long limit = reserved.get();
+            // Up to the first slot reserved but not written yet
+            while (length < limit && isWritten(length)) {
+                length++;
+            }
+            published.accumulateAndGet(length, Math::max);
+            return (int) length;
+        }
+
+        private boolean isWritten(long index) {
+            int segment = segment(index);
+            Columns columns = segments.get(segment);
+            return columns != null && columns.state(offset(index, segment)) != Columns.FREE;
+        }
+
+        // Of a published slot
+        Trade trade(long index) {
+            int segment = segment(index);
+            Columns columns = segments.get(segment);
+            int offset = offset(index, segment);
+            if (columns.state(offset) == Columns.UNPACKED) {
+                return unpacked.get(index);
+            }
+            return columns.unpack(offset, userId, currencies, statuses);
+        }
+
+        // Of a published slot
+        long timestamp(long index) {
+            int segment = segment(index);
+            return segments.get(segment).timestamps[offset(index, segment)];
+        }
+
+        TradePage page(LocalDateTime from, LocalDateTime to, Position after, int limit) {
+            int length = publishedLength();
+            int count = length / BLOCK_SIZE;
+            SortedBlocks sorted = blocks(count);
+
+            // Newest first, before the upper bound, down to the lower bound
+            Position upper = to == null ? null : Position.first(to);
+            if (after != null && (upper == null || after.compareTo(upper) < 0)) {
+                upper = after;
+            }
+            Position lower = from == null ? null : Position.first(from);
+
+            PriorityQueue<BlockCursor> merge = new PriorityQueue<>();
+            if (length % BLOCK_SIZE != 0) {
+                Block tail = new Block(this, length - length % BLOCK_SIZE, length % BLOCK_SIZE, count == 0 ? null : sorted.blocks[count - 1]);
+                addCursor(merge, tail, upper, lower);
+            }
+            // The newer blocks only hold trades at or after the upper bound
+            int next = upper == null ? count : sorted.countBefore(upper, count);
+            List<Trade> page = new ArrayList<>(Math.min(limit, 64));
+            Position last = null;
+            while (true) {
+                // Older blocks are merged as long as one of them may hold a trade newer than the ones merged so far
+                while (next > 0
+                    && (lower == null || sorted.blocks[next - 1].prefixMax >= lower.timestamp())
+                    && (merge.isEmpty() || sorted.blocks[next - 1].prefixMax >= merge.peek().timestamp())) {
+                    next--;
+                    addCursor(merge, sorted.blocks[next], upper, lower);
+                }
+                BlockCursor newest = merge.poll();
+                if (newest == null) {
+                    return new TradePage(page, null);
+                }
+                if (page.size() == limit) {
+                    return new TradePage(page, last.encode());
+                }
+                last = newest.position();
+                page.add(trade(last.index()));
+                if (newest.previous(lower)) {
+                    merge.add(newest);
+                }
+            }
+        }
+
+        private static void addCursor(PriorityQueue<BlockCursor> merge, Block block, Position upper, Position lower) {
+            BlockCursor cursor = block.cursorBefore(upper);
+            if (cursor != null && (lower == null || cursor.compareTo(lower) >= 0)) {
+                merge.add(cursor);
+            }
+        }
+
+        // At least the first count blocks of the log, sorted. Only the readers sort, once per block
+        private SortedBlocks blocks(int count) {
+            SortedBlocks current = blocks;
+            if (current.blocks.length < count) {
+                synchronized (this) {
+                    current = blocks;
+                    if (current.blocks.length < count) {
+                        Block[] more = Arrays.copyOf(current.blocks, count);
+                        for (int i = current.blocks.length; i < count; i++) {
+                            more[i] = new Block(this, (long) i * BLOCK_SIZE, BLOCK_SIZE, i == 0 ? null : more[i - 1]);
+                        }
+                        current = new SortedBlocks(more);
+                        blocks = current;
+                    }
+                }
+            }
+            return current;
+        }
+
+        private static int segment(long index) {
+            return 63 - Long.numberOfLeadingZeros(index / FIRST_SEGMENT_SIZE + 1);
+        }
+
+        private static int offset(long index, int segment) {
+            return (int) (index - ((long) FIRST_SEGMENT_SIZE << segment) + FIRST_SEGMENT_SIZE);
+        }
+    }
+
+    /**
+     * Running totals of the trades of a user. Updated under its lock, which is held for a few additions
+     * and only contended by the writers of the same user.
+     */
+    static final class Totals {
+
+        private long count;
+        private BigDecimal usdTotal = BigDecimal.ZERO;
+        private final Map<String, BigDecimal> convertedTotals = new TreeMap<>();
+        private LocalDateTime lastTradeTime;
+
+        synchronized void add(Trade trade) {
+            count++;
+            if (trade.usdAmount() != null) {
+                usdTotal = usdTotal.add(trade.usdAmount());
+            }
+            if (trade.toCurrency() != null && trade.convertedAmount() != null) {
+                convertedTotals.merge(trade.toCurrency(), trade.convertedAmount(), BigDecimal::add);
+            }
+            if (trade.timestamp() != null && (lastTradeTime == null || trade.timestamp().isAfter(lastTradeTime))) {
+                lastTradeTime = trade.timestamp();
+            }
+        }
+
+        synchronized TradeSummary summary(String userId) {
+            return new TradeSummary(userId, count, usdTotal, Collections.unmodifiableMap(new TreeMap<>(convertedTotals)), lastTradeTime);
+        }
+    }
+
+    /**
+     * A segment of the log, one array per field.
+     */
+    static final class Columns {
+
+        static final byte FREE = 0;
+        static final byte PACKED = 1;
+        static final byte UNPACKED = 2;
+
+        // Timestamp of a trade without one, before all the others
+        static final long NO_TIMESTAMP = Long.MIN_VALUE;
+        private static final long NANOS_PER_SECOND = 1_000_000_000L;
+        // Scale of a missing amount
+        private static final byte NO_AMOUNT = -1;
+        private static final VarHandle STATES = MethodHandles.arrayElementVarHandle(byte[].class);
+
+        final long[] timestamps;
+        private final long[] usdAmounts;
+        private final long[] convertedAmounts;
+        private final long[] exchangeRates;
+        private final byte[] usdScales;
+        private final byte[] convertedScales;
+        private final byte[] rateScales;
+        private final byte[] currencies;
+        private final byte[] statuses;
+        // Written last with a release, the other columns of a slot are read after its state
+        private final byte[] states;
+
+        Columns(int size) {
+            timestamps = new long[size];
+            usdAmounts = new long[size];
+            convertedAmounts = new long[size];
+            exchangeRates = new long[size];
+            usdScales = new byte[size];
+            convertedScales = new byte[size];
+            rateScales = new byte[size];
+            currencies = new byte[size];
+            statuses = new byte[size];
+            states = new byte[size];
+        }
+
+        /**
+         * @return false if the trade doesn't fit in the columns, then only its timestamp is written
+         */
+        boolean pack(int offset, Trade trade, Codes currencyCodes, Codes statusCodes) {
+            timestamps[offset] = timestamp(trade.timestamp());
+            int currency = currencyCodes.encode(trade.toCurrency());
+            int status = statusCodes.encode(trade.status());
+            if (currency < 0 || status < 0 || !fits(trade.timestamp())
+                || !packAmount(trade.usdAmount(), usdAmounts, usdScales, offset)
+                || !packAmount(trade.convertedAmount(), convertedAmounts, convertedScales, offset)
+                || !packAmount(trade.exchangeRate(), exchangeRates, rateScales, offset)) {
+                return false;
+            }
+            currencies[offset] = (byte) currency;
+            statuses[offset] = (byte) status;
+            publish(offset, PACKED);
+            return true;
+        }
+
+        Trade unpack(int offset, String userId, Codes currencyCodes, Codes statusCodes) {
+            long timestamp = timestamps[offset];
+            return new Trade(userId,
+                timestamp == NO_TIMESTAMP ? null : LocalDateTime.ofEpochSecond(Math.floorDiv(timestamp, NANOS_PER_SECOND), (int) Math.floorMod(timestamp, NANOS_PER_SECOND), ZoneOffset.UTC),
+                unpackAmount(usdAmounts, usdScales, offset),
+                currencyCodes.decode(currencies[offset]),
+                unpackAmount(convertedAmounts, convertedScales, offset),
+                unpackAmount(exchangeRates, rateScales, offset),
+                statusCodes.decode(statuses[offset]));
+        }
+
+        void publish(int offset, byte state) {
+            STATES.setRelease(states, offset, state);
+        }
+
+        byte state(int offset) {
+            return (byte) STATES.getAcquire(states, offset);
+        }
+
+        // Epoch nanos in UTC. Clamped before 1678 and after 2261, only to sort the trades that don't fit
+        static long timestamp(LocalDateTime timestamp) {
+            if (timestamp == null) {
+                return NO_TIMESTAMP;
+            }
+            long seconds = timestamp.toEpochSecond(ZoneOffset.UTC);
+            if (seconds >= Long.MAX_VALUE / NANOS_PER_SECOND) {
+                return Long.MAX_VALUE;
+            }
+            if (seconds <= Long.MIN_VALUE / NANOS_PER_SECOND) {
+                return NO_TIMESTAMP + 1;
+            }
+            return seconds * NANOS_PER_SECOND + timestamp.getNano();
+        }
+
+        private static boolean fits(LocalDateTime timestamp) {
+            long packed = timestamp(timestamp);
+            return packed != Long.MAX_VALUE && packed != NO_TIMESTAMP + 1;
+        }
+
+        private static boolean packAmount(BigDecimal amount, long[] mantissas, byte[] scales, int offset) {
+            if (amount == null) {
+                scales[offset] = NO_AMOUNT;
+                return true;
+            }
+            // The scale is kept as it is, 100.10 is read back as 100.10
+            if (amount.scale() < 0 || amount.scale() > FixedPoint.MAX_SCALE || amount.precision() > 18) {
+                return false;
+            }
+            mantissas[offset] = amount.unscaledValue().longValue();
+            scales[offset] = (byte) amount.scale();
+            return true;
+        }
+
+        private static BigDecimal unpackAmount(long[] mantissas, byte[] scales, int offset) {
+            byte scale = scales[offset];
+            return scale == NO_AMOUNT ? null : BigDecimal.valueOf(mantissas[offset], scale);
+        }
+    }
+
+    /**
+     * Byte codes of the values of a column, code 0 is null.
+     */
+    static final class Codes {
+
+        private static final int MAX_CODES = 256;
+
+        private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+        private volatile String[] values = {null};
+
+        /**
+         * @return the code of the value, or -1 when all the codes are taken
+         */
+        int encode(String value) {
+            if (value == null) {
+                return 0;
+            }
+            Integer code = codes.get(value);
+            return code != null ? code : add(value);
+        }
+
+        private synchronized int add(String value) {
+            Integer code = codes.get(value);
+            if (code != null) {
+                return code;
+            }
+            String[] current = values;
+            if (current.length == MAX_CODES) {
+                return -1;
+            }
+            String[] more = Arrays.copyOf(current, current.length + 1);
+            more[current.length] = value;
+            // Before the code is handed out, so a code read from the columns is always known
+            values = more;
+            codes.put(value, current.length);
+            return current.length;
+        }
+
+        String decode(byte code) {
+            return values[code & 0xFF];
+        }
+    }
+
+    /**
+     * Consecutive trades of the log sorted by timestamp, then by index.
+     */
+    static final class Block {
+
+        private final UserTrades trades;
+        private final long first;
+        // Offsets from the first index, in time order
+        private final short[] order;
+        // The oldest timestamp of this block
+        final long min;
+        // The newest timestamp of this block and of all the ones before
+        final long prefixMax;
+
+        Block(UserTrades trades, long first, int size, Block previous) {
+            this.trades = trades;
+            this.first = first;
+            long[] timestamps = new long[size];
+            Integer[] offsets = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                timestamps[i] = trades.timestamp(first + i);
+                offsets[i] = i;
+            }
+            // Stable, the trades at the same time stay in log order
+            Arrays.sort(offsets, (a, b) -> Long.compare(timestamps[a], timestamps[b]));
+            order = new short[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = (short) offsets[i].intValue();
+            }
+            min = timestamps[offsets[0]];
+            long max = timestamps[offsets[size - 1]];
+            prefixMax = previous == null ? max : Math.max(max, previous.prefixMax);
+        }
+
+        long index(int rank) {
+            return first + Short.toUnsignedInt(order[rank]);
+        }
+
+        long timestamp(int rank) {
+            return trades.timestamp(index(rank));
+        }
+
+        /**
+         * @return a cursor on the newest trade of the block before upper (excluded), or null if there is none
+         */
+        BlockCursor cursorBefore(Position upper) {
+            int low = 0;
+            int high = order.length;
+            if (upper != null) {
+                // The first rank at or after upper
+                while (low < high) {
+                    int middle = (low + high) >>> 1;
+                    if (Position.compare(timestamp(middle), index(middle), upper) < 0) {
+                        low = middle + 1;
+                    } else {
+                        high = middle;
+                    }
+                }
+            }
+            return high == 0 ? null : new BlockCursor(this, high - 1);
+        }
+    }
+
+    /**
+     * The full blocks of the log, in log order, with the oldest timestamp of each block and of all the ones after.
+     * Those never decrease, so the blocks holding a trade before a position are found with a binary search.
+     */
+    static final class SortedBlocks {
+
+        final Block[] blocks;
+        private final long[] suffixMins;
+
+        SortedBlocks(Block[] blocks) {
+            this.blocks = blocks;
+            suffixMins = new long[blocks.length];
+            long min = Long.MAX_VALUE;
+            for (int i = blocks.length - 1; i >= 0; i--) {
+                min = Math.min(min, blocks[i].min);
+                suffixMins[i] = min;
+            }
+        }
+
+        /**
+         * @return the number of blocks, among the first count, up to the last one that may hold a trade before upper
+         */
+        int countBefore(Position upper, int count) {
+            // The first block whose trades, and the ones of all the blocks after, are after upper
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (suffixMins[middle] <= upper.timestamp()) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * A trade of a block, newest first in a priority queue.
+     */
+    static final class BlockCursor implements Comparable<BlockCursor> {
+
+        private final Block block;
+        private int rank;
+
+        BlockCursor(Block block, int rank) {
+            this.block = block;
+            this.rank = rank;
+        }
+
+        long timestamp() {
+            return block.timestamp(rank);
+        }
+
+        long index() {
+            return block.index(rank);
+        }
+
+        Position position() {
+            return new Position(timestamp(), index());
+        }
+
+        /**
+         * @return false if there is no older trade in the block, from lower (included)
+         */
+        boolean previous(Position lower) {
+            rank--;
+            return rank >= 0 && (lower == null || compareTo(lower) >= 0);
+        }
+
+        int compareTo(Position position) {
+            return Position.compare(timestamp(), index(), position);
+        }
+
+        @Override
+        public int compareTo(BlockCursor other) {
+            int byTimestamp = Long.compare(other.timestamp(), timestamp());
+            return byTimestamp != 0 ? byTimestamp : Long.compare(other.index(), index());
+        }
+    }
+
+    /**
+     * Key of a trade in time order: its timestamp in epoch nanos, then its index in the log.
+     */
+    record Position(long timestamp, long index) implements Comparable<Position> {
+
+        // Before all the trades at this time
+        static Position first(LocalDateTime timestamp) {
+            return new Position(Columns.timestamp(timestamp), -1);
+        }
+
+        static int compare(long timestamp, long index, Position position) {
+            int byTimestamp = Long.compare(timestamp, position.timestamp);
+            return byTimestamp != 0 ? byTimestamp : Long.compare(index, position.index);
+        }
+
+        @Override
+        public int compareTo(Position other) {
+            return compare(timestamp, index, other);
+        }
+
+        // Opaque to the clients, they only send it back
+        String encode() {
+            String position = timestamp + "|" + index;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Position decode(String cursor) {
+            try {
+                String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = position.indexOf('|');
+                return new Position(Long.parseLong(position.substring(0, separator)), Long.parseLong(position.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+            }
+        }
+    }
+
+    private static final class Snapshot extends AbstractList<Trade> implements RandomAccess {
+
+        private final UserTrades trades;
+        private final int size;
+
+        Snapshot(UserTrades trades, int size) {
+            this.trades = trades;
+            this.size = size;
+        }
+
+        @Override
+        public Trade get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of " + size + " trades");
+            }
+            return trades.trade(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
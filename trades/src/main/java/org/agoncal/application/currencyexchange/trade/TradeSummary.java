@@ -0,0 +1,21 @@
+package org.agoncal.application.currencyexchange.trade;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Totals of the trades of a user, kept up to date as trades are executed.
+ *
+ * @param convertedTotals the converted amounts summed by currency
+ * @param lastTradeTime   the newest trade timestamp, null when there is none
+ */
+public record TradeSummary(
+
+    String userId,
+    long count,
+    BigDecimal usdTotal,
+    Map<String, BigDecimal> convertedTotals,
+    LocalDateTime lastTradeTime
+) {
+}
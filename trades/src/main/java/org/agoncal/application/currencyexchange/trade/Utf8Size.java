@@ -0,0 +1,66 @@
+package org.agoncal.application.currencyexchange.trade;
+
+import jakarta.validation.Constraint;
+import jakarta.validation.ConstraintValidator;
+import jakarta.validation.ConstraintValidatorContext;
+import jakarta.validation.Payload;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The string takes at most {@link #max()} bytes in UTF-8, the room it has in a {@link TradeJournal} record.
+ * Null is valid.
+ */
+@Target({ElementType.FIELD, ElementType.METHOD, ElementType.PARAMETER, ElementType.RECORD_COMPONENT})
+@Retention(RetentionPolicy.RUNTIME)
+@Constraint(validatedBy = Utf8Size.Validator.class)
+public @interface Utf8Size {
+
+    String message() default "must be at most {max} bytes in UTF-8";
+
+    Class<?>[] groups() default {};
+
+    Class<? extends Payload>[] payload() default {};
+
+    int max();
+
+    class Validator implements ConstraintValidator<Utf8Size, String> {
+
+        private int max;
+
+        @Override
+        public void initialize(Utf8Size constraint) {
+            max = constraint.max();
+        }
+
+        @Override
+        public boolean isValid(String value, ConstraintValidatorContext context) {
+            return value == null || utf8Length(value) <= max;
+        }
+
+        /**
+         * @return the number of bytes of the string in UTF-8, without encoding it
+         */
+        static int utf8Length(String value) {
+            int length = 0;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    length++;
+                } else if (c < 0x800) {
+                    length += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    // A code point above the BMP, 4 bytes for both chars
+                    length += 4;
+                    i++;
+                } else {
+                    length += 3;
+                }
+            }
+            return length;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.agoncal.application.currencyexchange.trade;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TradeJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<TradeJournal> journals = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        journals.forEach(TradeJournal::close);
+    }
+
+    @Test
+    void shouldReplayTheTradesAfterARestart() {
+        Trade executed = new Trade("john.doe@example.com", LocalDateTime.of(2024, 1, 15, 10, 30, 45, 123_000_000),
+            new BigDecimal("100.10"), "JPY", new BigDecimal("14939.9250"), new BigDecimal("149.25"), "COMPLETED");
+        Trade pending = new Trade("jane.smith@example.com", null, BigDecimal.valueOf(100), "EUR", null, BigDecimal.ZERO, "PENDING");
+
+        TradeJournal journal = open(1 << 20, new ArrayList<>());
+        journal.append(executed);
+        journal.append(pending);
+        journal.close();
+
+        List<Trade> replayed = new ArrayList<>();
+        open(1 << 20, replayed);
+        assertEquals(List.of(executed, pending), replayed);
+    }
+
+    @Test
+    void shouldRollSegmentsAndGroupCommitConcurrentWriters() throws Exception {
+        // 10 records per segment
+        int segmentSize = TradeJournal.HEADER_SIZE + 10 * TradeJournal.RECORD_SIZE;
+        TradeJournal journal = open(segmentSize, new ArrayList<>());
+        int writers = 4;
+        int tradesPerWriter = 100;
+
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int writer = 0; writer < writers; writer++) {
+                int first = writer * tradesPerWriter;
+                futures.add(executor.submit(() -> {
+                    for (int i = first; i < first + tradesPerWriter; i++) {
+                        journal.append(trade(i));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        journal.close();
+
+        List<Trade> replayed = new ArrayList<>();
+        open(segmentSize, replayed);
+        Set<BigDecimal> amounts = new HashSet<>();
+        replayed.forEach(trade -> amounts.add(trade.usdAmount()));
+        assertEquals(writers * tradesPerWriter, amounts.size());
+        try (var files = Files.list(directory)) {
+            assertEquals(writers * tradesPerWriter / 10, files.count());
+        }
+    }
+
+    @Test
+    void shouldStopTheReplayAtATornRecord() throws Exception {
+        TradeJournal journal = open(1 << 20, new ArrayList<>());
+        for (int i = 0; i < 3; i++) {
+            journal.append(trade(i));
+        }
+        journal.close();
+        // The crash tore the second record
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve("trades-000000.journal").toFile(), "rw")) {
+            file.seek(TradeJournal.HEADER_SIZE + TradeJournal.RECORD_SIZE + 20);
+            file.write(42);
+        }
+
+        List<Trade> replayed = new ArrayList<>();
+        TradeJournal recovered = open(1 << 20, replayed);
+        assertEquals(1, replayed.size());
+
+        // The next trades go after the last valid one, the third one is gone for good
+        recovered.append(trade(3));
+        recovered.close();
+        List<Trade> again = new ArrayList<>();
+        open(1 << 20, again);
+        assertEquals(List.of(trade(0).usdAmount(), trade(3).usdAmount()), again.stream().map(Trade::usdAmount).toList());
+    }
+
+    @Test
+    void shouldRejectATradeThatDoesNotFitInARecord() {
+        TradeJournal journal = open(1 << 20, new ArrayList<>());
+
+        assertThrows(IllegalArgumentException.class,
+            () -> journal.append(new Trade("x".repeat(200), BigDecimal.ONE, "EUR", BigDecimal.ONE)));
+        assertThrows(IllegalArgumentException.class,
+            () -> journal.append(new Trade("user1", BigDecimal.ONE, "EUR", new BigDecimal("1e40").add(new BigDecimal("0.1")))));
+    }
+
+    private TradeJournal open(int segmentSize, List<Trade> replayed) {
+        TradeJournal journal = new TradeJournal();
+        journal.enabled = true;
+        journal.directory = directory.toString();
+        journal.segmentSize = segmentSize;
+        journal.open(replayed::add);
+        journals.add(journal);
+        return journal;
+    }
+
+    private static Trade trade(int usdAmount) {
+        return new Trade("user1", LocalDateTime.of(2024, 1, 15, 10, 30), BigDecimal.valueOf(usdAmount), "EUR",
+            BigDecimal.valueOf(usdAmount).multiply(new BigDecimal("0.92")), new BigDecimal("0.92"), "COMPLETED");
+    }
+}
@@ -1,15 +1,26 @@
 package org.agoncal.application.currencyexchange.trade;
 
 import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.RestAssured;
 import io.restassured.http.ContentType;
 import org.junit.jupiter.api.Test;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.math.BigDecimal;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 import static io.restassured.RestAssured.given;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @QuarkusTest
 class TradeResourceTest {
@@ -37,7 +48,58 @@ class TradeResourceTest {
             .when()
             .post("/api/trades")
             .then()
-            .statusCode(500);
+            .statusCode(400);
+    }
+
+    @Test
+    void shouldNotExecuteTradeOfUserIdTooLongForTheJournal() {
+        Trade trade = new Trade("x".repeat(TradeJournal.USER_ID_BYTES + 1), BigDecimal.valueOf(100), "EUR", BigDecimal.valueOf(0.92));
+
+        given()
+            .contentType(ContentType.JSON)
+            .body(trade)
+            .when()
+            .post("/api/trades")
+            .then()
+            .statusCode(400);
+    }
+
+    @Test
+    void shouldNotExecuteTradeLargerThanTheBodyLimit() {
+        byte[] body = new byte[10 * 1024 * 1024 + 1];
+
+        given()
+            .contentType(ContentType.JSON)
+            .body(body)
+            .when()
+            .post("/api/trades")
+            .then()
+            .statusCode(413);
+        // Chunked, the body is cut while it is read
+        given()
+            .contentType(ContentType.JSON)
+            .body(new ByteArrayInputStream(body))
+            .when()
+            .post("/api/trades")
+            .then()
+            .statusCode(413);
+    }
+
+    @Test
+    void shouldNotExecuteTradeWithMalformedContentLength() throws IOException {
+        // HTTP clients don't send a malformed header
+        try (Socket socket = new Socket("localhost", RestAssured.port)) {
+            socket.getOutputStream().write("""
+                POST /api/trades HTTP/1.1\r
+                Host: localhost\r
+                Content-Type: application/json\r
+                Content-Length: 12abc\r
+                \r
+                """.getBytes(StandardCharsets.US_ASCII));
+            String statusLine = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII)).readLine();
+
+            assertEquals("HTTP/1.1 400 Bad Request", statusLine);
+        }
     }
 
     @Test
@@ -76,6 +138,181 @@ class TradeResourceTest {
             .body("[0].exchangeRate", is(0.92f));
     }
 
+    @Test
+    void shouldGetTradePages() {
+        for (int i = 1; i <= 3; i++) {
+            given()
+                .contentType(ContentType.JSON)
+                .body(new Trade("pageduser", BigDecimal.valueOf(i), "EUR", BigDecimal.valueOf(0.92)))
+                .when()
+                .post("/api/trades")
+                .then()
+                .statusCode(204);
+        }
+
+        String cursor = given()
+            .queryParam("limit", 2)
+            .when()
+            .get("/api/trades/pageduser/page")
+            .then()
+            .statusCode(200)
+            .body("trades.size()", is(2))
+            .body("trades[0].usdAmount", is(3))
+            .body("nextCursor", notNullValue())
+            .extract().path("nextCursor");
+
+        given()
+            .queryParam("limit", 2)
+            .queryParam("cursor", cursor)
+            .when()
+            .get("/api/trades/pageduser/page")
+            .then()
+            .statusCode(200)
+            .body("trades.size()", is(1))
+            .body("trades[0].usdAmount", is(1))
+            .body("nextCursor", nullValue());
+
+        given()
+            .queryParam("to", "2000-01-01T00:00:00")
+            .when()
+            .get("/api/trades/pageduser/page")
+            .then()
+            .statusCode(200)
+            .body("trades.size()", is(0));
+    }
+
+    @Test
+    void shouldGetTradeSummary() {
+        for (int i = 1; i <= 3; i++) {
+            given()
+                .contentType(ContentType.JSON)
+                .body(new Trade("summaryuser", BigDecimal.valueOf(i * 100), i == 3 ? "JPY" : "EUR", BigDecimal.valueOf(0.5)))
+                .when()
+                .post("/api/trades")
+                .then()
+                .statusCode(204);
+        }
+
+        given()
+            .when()
+            .get("/api/trades/summaryuser/summary")
+            .then()
+            .statusCode(200)
+            .body("userId", is("summaryuser"))
+            .body("count", is(3))
+            .body("usdTotal", is(600))
+            .body("convertedTotals.EUR", is(150.0f))
+            .body("convertedTotals.JPY", is(150.0f))
+            .body("lastTradeTime", notNullValue());
+
+        given()
+            .when()
+            .get("/api/trades/nosummaryuser/summary")
+            .then()
+            .statusCode(200)
+            .body("count", is(0))
+            .body("lastTradeTime", nullValue());
+    }
+
+    @Test
+    void shouldNotGetTradePageWithInvalidCursor() {
+        given()
+            .queryParam("cursor", "not-a-cursor")
+            .when()
+            .get("/api/trades/pageduser/page")
+            .then()
+            .statusCode(400);
+    }
+
+    @Test
+    void shouldExecuteBatchOfTrades() {
+        String lines = """
+            {"userId":"batchuser","usdAmount":100,"toCurrency":"EUR","exchangeRate":0.92}
+            {"userId":"","usdAmount":-10,"toCurrency":"EUR","exchangeRate":0.92}
+            {"userId":"batchuser","usdAmount":"a lot","toCurrency":"EUR","exchangeRate":0.92}
+
+            {"userId":"batchuser","usdAmount":50,"toCurrency":"JPY","exchangeRate":0}
+            {"userId":"batchuser","usdAmount":
+            """;
+
+        List<String> results = given()
+            .contentType(TradeResource.APPLICATION_NDJSON)
+            .body(lines.getBytes(StandardCharsets.UTF_8))
+            .when()
+            .post("/api/trades/batch")
+            .then()
+            .statusCode(200)
+            .extract().asString().lines().toList();
+
+        assertEquals(List.of(
+            "{\"line\":1,\"status\":\"COMPLETED\",\"convertedAmount\":92.00}",
+            "{\"line\":2,\"status\":\"REJECTED\",\"error\":\"usdAmount must be greater than or equal to 0, userId must not be blank\"}",
+            "{\"line\":3,\"status\":\"REJECTED\",\"error\":\"Invalid trade: Cannot deserialize value of type `java.math.BigDecimal` from String \\\"a lot\\\": not a valid representation\"}",
+            "{\"line\":5,\"status\":\"PENDING\",\"convertedAmount\":0}"
+        ), results.subList(0, 4));
+        // Reading stops at the truncated last line
+        assertEquals(5, results.size());
+        assertTrue(results.get(4).startsWith("{\"line\":7,\"status\":\"REJECTED\",\"error\":\"Malformed JSON: "));
+
+        given()
+            .when()
+            .get("/api/trades/batchuser")
+            .then()
+            .statusCode(200)
+            .body("size()", is(2));
+    }
+
+    @Test
+    void shouldExecuteBatchLargerThanTheBodyLimit() {
+        String trade = "{\"userId\":\"largebatchuser\",\"usdAmount\":100,\"toCurrency\":\"EUR\",\"exchangeRate\":0.92}\n";
+        int count = 10 * 1024 * 1024 / trade.length() + 1;
+
+        String results = given()
+            .contentType(TradeResource.APPLICATION_NDJSON)
+            .body(trade.repeat(count).getBytes(StandardCharsets.UTF_8))
+            .when()
+            .post("/api/trades/batch")
+            .then()
+            .statusCode(200)
+            .extract().asString();
+
+        assertEquals(count, results.lines().count());
+    }
+
+    @Test
+    void shouldExportTradesAsLinesOrEvents() {
+        for (int i = 1; i <= 300; i++) {
+            given()
+                .contentType(ContentType.JSON)
+                .body(new Trade("exportuser", BigDecimal.valueOf(i), "EUR", BigDecimal.valueOf(0.92)))
+                .when()
+                .post("/api/trades")
+                .then()
+                .statusCode(204);
+        }
+
+        List<String> lines = given()
+            .accept(TradeResource.APPLICATION_NDJSON)
+            .when()
+            .get("/api/trades/exportuser/export")
+            .then()
+            .statusCode(200)
+            .extract().asString().lines().toList();
+        assertEquals(300, lines.size());
+        assertTrue(lines.get(0).startsWith("{\"userId\":\"exportuser\""));
+        assertTrue(lines.get(299).contains("\"usdAmount\":300,"));
+
+        List<String> events = given()
+            .accept("text/event-stream")
+            .when()
+            .get("/api/trades/exportuser/export")
+            .then()
+            .statusCode(200)
+            .extract().asString().lines().filter(line -> line.startsWith("data:")).toList();
+        assertEquals(300, events.size());
+        assertTrue(events.get(0).contains("\"usdAmount\":1,"));
+    }
+
     @Test
     void testGetTradesInvalidUserId() {
         // Test with empty userId handled by our service logic
@@ -48,4 +48,15 @@ class TradeServiceTest {
         List<Trade> history = service.getAllTrades("user789");
         assertEquals(1, history.size());
     }
+
+    @Test
+    void shouldConvertAmountExactly() {
+        Trade trade = new Trade("user321", new BigDecimal("100.10"), "JPY", new BigDecimal("149.25"));
+
+        service.executeTrade(trade);
+
+        Trade executed = service.getAllTrades("user321").get(0);
+        assertEquals(new BigDecimal("14939.9250"), executed.convertedAmount());
+        assertEquals("COMPLETED", executed.status());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,254 @@
+package org.agoncal.application.currencyexchange.trade;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TradeStoreTest {
+
+    @Test
+    void shouldKeepTheTradesInOrder() {
+        TradeStore store = new TradeStore();
+        for (int i = 0; i < 1_000; i++) {
+            store.append(trade("user1", i));
+        }
+
+        List<Trade> trades = store.snapshot("user1");
+
+        assertEquals(1_000, trades.size());
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals(BigDecimal.valueOf(i), trades.get(i).usdAmount());
+        }
+        assertTrue(store.snapshot("unknown").isEmpty());
+    }
+
+    @Test
+    void shouldNotChangeASnapshot() {
+        TradeStore store = new TradeStore();
+        store.append(trade("user1", 1));
+
+        List<Trade> snapshot = store.snapshot("user1");
+        store.append(trade("user1", 2));
+
+        assertEquals(1, snapshot.size());
+        assertEquals(2, store.snapshot("user1").size());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add(trade("user1", 3)));
+    }
+
+    @Test
+    void shouldAppendFromConcurrentWriters() throws Exception {
+        TradeStore store = new TradeStore();
+        int writers = 8;
+        int tradesPerWriter = 20_000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int writer = 0; writer < writers; writer++) {
+                int first = writer * tradesPerWriter;
+                futures.add(executor.submit(() -> {
+                    for (int i = first; i < first + tradesPerWriter; i++) {
+                        store.append(trade("user1", i));
+                    }
+                }));
+            }
+            // Reading while writing, snapshots only grow and have no hole
+            Future<?> reader = executor.submit(() -> {
+                int previous = 0;
+                while (previous < writers * tradesPerWriter) {
+                    List<Trade> snapshot = store.snapshot("user1");
+                    assertTrue(snapshot.size() >= previous);
+                    for (Trade trade : snapshot) {
+                        assertNotNull(trade);
+                    }
+                    previous = snapshot.size();
+                }
+            });
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            reader.get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Set<BigDecimal> amounts = new HashSet<>();
+        for (Trade trade : store.snapshot("user1")) {
+            amounts.add(trade.usdAmount());
+        }
+        assertEquals(writers * tradesPerWriter, amounts.size());
+    }
+
+    @Test
+    void shouldPageThroughATimeRangeNewestFirst() {
+        TradeStore store = new TradeStore();
+        LocalDateTime start = LocalDateTime.of(2024, 1, 15, 10, 0);
+        // Two trades a minute, not appended in time order
+        for (int i = 99; i >= 0; i--) {
+            store.append(trade("user1", start.plusMinutes(i / 2), i));
+        }
+
+        List<Integer> amounts = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            TradePage page = store.page("user1", start.plusMinutes(10), start.plusMinutes(40), cursor, 7);
+            page.trades().forEach(trade -> amounts.add(trade.usdAmount().intValue()));
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        // From 10:10 included to 10:40 excluded, newest first
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 79; i >= 20; i--) {
+            expected.add(i % 2 == 0 ? i + 1 : i - 1);
+        }
+        assertEquals(expected, amounts);
+        assertEquals(9, pages);
+
+        TradePage all = store.page("user1", null, null, null, 500);
+        assertEquals(100, all.trades().size());
+        assertNull(all.nextCursor());
+        assertTrue(store.page("unknown", null, null, null, 10).trades().isEmpty());
+    }
+
+    @Test
+    void shouldReadTheTradesBackAsTheyWere() {
+        TradeStore store = new TradeStore();
+        List<Trade> trades = List.of(
+            new Trade("user1", LocalDateTime.of(2024, 1, 15, 10, 30, 45, 123_456_789), new BigDecimal("100.10"), "JPY", new BigDecimal("14939.9250"), new BigDecimal("149.25"), "COMPLETED"),
+            new Trade("user1", null, BigDecimal.ZERO, null, null, new BigDecimal("-0.5"), null),
+            new Trade("user1", LocalDateTime.of(1960, 2, 29, 0, 0), BigDecimal.ONE, "EUR", BigDecimal.ONE, BigDecimal.ONE, "PENDING"),
+            // Kept aside, they don't fit in the columns
+            new Trade("user1", LocalDateTime.of(3000, 1, 1, 0, 0), BigDecimal.ONE, "EUR", null, BigDecimal.ONE, "PENDING"),
+            new Trade("user1", LocalDateTime.of(2024, 1, 15, 10, 0), new BigDecimal("1e40").add(new BigDecimal("0.1")), "EUR", null, BigDecimal.ONE, "PENDING"),
+            new Trade("user1", LocalDateTime.of(2024, 1, 15, 10, 0), new BigDecimal("1E+2"), "EUR", null, BigDecimal.ONE, "PENDING")
+        );
+        trades.forEach(store::append);
+
+        assertEquals(trades, store.snapshot("user1"));
+        assertEquals(trades.size(), store.page("user1", null, null, null, 10).trades().size());
+    }
+
+    @Test
+    void shouldPageLikeAFullSort() {
+        TradeStore store = new TradeStore();
+        Random random = new Random(42);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 15, 10, 0);
+        // Over several blocks, mostly in time order with trades late by up to an hour and duplicate timestamps
+        List<Trade> trades = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            LocalDateTime timestamp = start.plusSeconds(i * 10L - (random.nextInt(4) == 0 ? random.nextInt(3_600) : 0));
+            Trade trade = trade("user1", timestamp, i);
+            trades.add(trade);
+            store.append(trade);
+        }
+        List<Trade> newestFirst = new ArrayList<>(trades);
+        // Stable, the trades at the same time stay in log order, reversed below
+        newestFirst.sort(Comparator.comparing(Trade::timestamp));
+        Collections.reverse(newestFirst);
+
+        for (int query = 0; query < 20; query++) {
+            LocalDateTime from = random.nextBoolean() ? null : start.plusSeconds(random.nextInt(50_000));
+            LocalDateTime to = random.nextBoolean() ? null : start.plusSeconds(random.nextInt(50_000));
+            int limit = 1 + random.nextInt(700);
+            List<Trade> expected = newestFirst.stream()
+                .filter(trade -> from == null || !trade.timestamp().isBefore(from))
+                .filter(trade -> to == null || trade.timestamp().isBefore(to))
+                .toList();
+
+            List<Trade> pages = new ArrayList<>();
+            String cursor = null;
+            do {
+                TradePage page = store.page("user1", from, to, cursor, limit);
+                assertTrue(page.trades().size() <= limit);
+                pages.addAll(page.trades());
+                cursor = page.nextCursor();
+            } while (cursor != null);
+            assertEquals(expected, pages, "from " + from + " to " + to + " by " + limit);
+        }
+    }
+
+    @Test
+    void shouldFindALateTradeBehindNewerBlocks() {
+        TradeStore store = new TradeStore();
+        LocalDateTime start = LocalDateTime.of(2024, 1, 15, 10, 0);
+        // Eleven blocks in time order, the last one ending with a trade a day late
+        for (int i = 0; i < 11 * 1024 - 1; i++) {
+            store.append(trade("user1", start.plusSeconds(i), i));
+        }
+        store.append(trade("user1", start.minusDays(1), -1));
+
+        // Before the first blocks, only the late trade
+        TradePage late = store.page("user1", null, start, null, 10);
+        assertEquals(List.of(-1), late.trades().stream().map(trade -> trade.usdAmount().intValue()).toList());
+        assertNull(late.nextCursor());
+
+        // Deep in the log, then down to the late trade
+        TradePage deep = store.page("user1", null, start.plusSeconds(3), null, 2);
+        assertEquals(List.of(2, 1), deep.trades().stream().map(trade -> trade.usdAmount().intValue()).toList());
+        TradePage last = store.page("user1", null, null, deep.nextCursor(), 5);
+        assertEquals(List.of(0, -1), last.trades().stream().map(trade -> trade.usdAmount().intValue()).toList());
+        assertNull(last.nextCursor());
+    }
+
+    @Test
+    void shouldKeepTheTotalsUpToDate() {
+        TradeStore store = new TradeStore();
+        store.append(new Trade("user1", LocalDateTime.of(2024, 1, 15, 10, 30), new BigDecimal("100.10"), "JPY", new BigDecimal("14939.9250"), new BigDecimal("149.25"), "COMPLETED"));
+        store.append(new Trade("user1", LocalDateTime.of(2024, 1, 15, 10, 0), new BigDecimal("100"), "EUR", new BigDecimal("92.00"), new BigDecimal("0.92"), "COMPLETED"));
+        store.append(new Trade("user1", LocalDateTime.of(2024, 1, 15, 9, 0), new BigDecimal("50"), "EUR", new BigDecimal("46.00"), new BigDecimal("0.92"), "FAILED"));
+        store.append(trade("user2", 1));
+
+        TradeSummary summary = store.summary("user1");
+
+        assertEquals(3, summary.count());
+        assertEquals(new BigDecimal("250.10"), summary.usdTotal());
+        assertEquals(Map.of("EUR", new BigDecimal("138.00"), "JPY", new BigDecimal("14939.9250")), summary.convertedTotals());
+        // The newest trade, not the last appended
+        assertEquals(LocalDateTime.of(2024, 1, 15, 10, 30), summary.lastTradeTime());
+        assertEquals(1, store.summary("user2").count());
+        assertEquals(new TradeSummary("unknown", 0, BigDecimal.ZERO, Map.of(), null), store.summary("unknown"));
+    }
+
+    @Test
+    void shouldRejectAnInvalidCursor() {
+        TradeStore store = new TradeStore();
+        store.append(trade("user1", 1));
+
+        assertThrows(IllegalArgumentException.class, () -> store.page("user1", null, null, "not-a-cursor", 10));
+        assertThrows(IllegalArgumentException.class, () -> store.page("unknown", null, null, "not-a-cursor", 10));
+    }
+
+    @Test
+    void shouldRejectANonPositiveLimit() {
+        TradeStore store = new TradeStore();
+        store.append(trade("user1", 1));
+
+        assertThrows(IllegalArgumentException.class, () -> store.page("user1", null, null, null, 0));
+        assertThrows(IllegalArgumentException.class, () -> store.page("user1", null, null, null, -1));
+        assertThrows(IllegalArgumentException.class, () -> store.page("unknown", null, null, null, 0));
+    }
+
+    private static Trade trade(String userId, LocalDateTime timestamp, int usdAmount) {
+        return new Trade(userId, timestamp, BigDecimal.valueOf(usdAmount), "EUR", null, BigDecimal.valueOf(0.92), "PENDING");
+    }
+
+    private static Trade trade(String userId, int usdAmount) {
+        return new Trade(userId, BigDecimal.valueOf(usdAmount), "EUR", BigDecimal.valueOf(0.92));
+    }
+}
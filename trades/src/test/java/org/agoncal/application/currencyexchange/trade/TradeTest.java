@@ -34,4 +34,19 @@ class TradeTest {
         assertTrue(violations.stream().anyMatch(v -> v.getPropertyPath().toString().equals("toCurrency")));
         assertTrue(violations.stream().anyMatch(v -> v.getPropertyPath().toString().equals("exchangeRate")));
     }
-}
\ No newline at end of file
+
+    @Test
+    void userIdShouldFitInAJournalRecord() {
+        // 106 bytes in UTF-8, then 108
+        Trade fits = new Trade("é".repeat(53), BigDecimal.valueOf(100), "EUR", BigDecimal.valueOf(0.92));
+        Trade tooLong = new Trade("é".repeat(54), BigDecimal.valueOf(100), "EUR", BigDecimal.valueOf(0.92));
+        Trade emoji = new Trade("\uD83D\uDCB1".repeat(27), BigDecimal.valueOf(100), "EUR", BigDecimal.valueOf(0.92));
+
+        assertTrue(validator.validate(fits).isEmpty());
+        Set<ConstraintViolation<Trade>> violations = validator.validate(tooLong);
+        assertEquals(1, violations.size());
+        assertEquals("userId", violations.iterator().next().getPropertyPath().toString());
+        assertEquals(1, validator.validate(emoji).size());
+        assertEquals(108, Utf8Size.Validator.utf8Length("\uD83D\uDCB1".repeat(27)));
+    }
+}